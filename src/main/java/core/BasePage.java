@@ -1,9 +1,21 @@
 package core;
 
+import org.openqa.selenium.support.PageFactory;
+
 import util.Utils;
 
 /**
  * Generic behavior that will be inherited among all Pages.
+ * <p>
+ * The WebElement and List&lt;WebElement&gt; fields of the pages, annotated with
+ * Selenium's @FindBy, become lazy proxies (see {@link CachedFieldDecorator}):
+ * they are found on the first use, reused while the page doesn't navigate and
+ * found again when they become stale.
+ * 
+ * <pre>
+ * &#64;FindBy(id = "login")
+ * private WebElement login;
+ * </pre>
  * 
  * @author Bruno Fraga
  *
@@ -13,7 +25,9 @@ public class BasePage {
 	protected Utils utils;
 	
 	public BasePage() {
-		utils = new Utils();
+		utils = DriverFactory.getUtils();
+		PageFactory.initElements(new CachedFieldDecorator(), this);
+		UsageRecorder.recordPage(getClass());
 	}
 	
 }
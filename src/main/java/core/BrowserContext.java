@@ -0,0 +1,170 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openqa.selenium.WebDriver;
+
+/**
+ * Tracks the window and the frame path the tests want to be in and the ones the
+ * driver is really in. The switches are applied only when a command needs them
+ * (see {@link DriverFactory#getDriver()}), so leaving and entering the same
+ * frame again sends nothing to the driver, and a frame path is restored with
+ * the fewest switchTo() commands. Once a command has been sent inside a frame,
+ * the page may have navigated or removed that frame, so the next change of
+ * window or frame path starts again from defaultContent().
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class BrowserContext {
+
+	private String window;
+	private final List<String> frames = new ArrayList<String>();
+
+	private String appliedWindow;
+	private final List<String> appliedFrames = new ArrayList<String>();
+	private boolean appliedKnown = true;
+	private boolean moved;
+	private boolean used;
+
+	private final ElementCache cache = new ElementCache();
+
+	/**
+	 * Selects a window. The frame path goes back to the top of that window.
+	 * 
+	 * @param handle Window handle.
+	 */
+	public void switchWindow(String handle) {
+		window = handle;
+		frames.clear();
+		moved = true;
+	}
+
+	/**
+	 * Enters a frame of the current frame.
+	 * 
+	 * @param frame Frame id or name.
+	 */
+	public void enterFrame(String frame) {
+		frames.add(frame);
+		moved = true;
+	}
+
+	/**
+	 * Goes back to the top of the current window.
+	 */
+	public void exitFrames() {
+		frames.clear();
+		moved = true;
+	}
+
+	/**
+	 * Goes back to the parent of the current frame.
+	 */
+	public void exitFrame() {
+		if (!frames.isEmpty()) {
+			frames.remove(frames.size() - 1);
+		}
+		moved = true;
+	}
+
+	/**
+	 * Must be called after the current window navigates or refreshes. The driver
+	 * goes back to the top of the window and the elements of the window are
+	 * removed from the cache.
+	 */
+	public void navigated() {
+		frames.clear();
+		appliedFrames.clear();
+		used = false;
+		cache.invalidateWindow(currentWindow());
+	}
+
+	/**
+	 * Sends the switchTo() commands needed to move the driver from where it is to
+	 * where the tests want it to be. Nothing is sent when both are the same. Must
+	 * be called before every command, so the context knows when a command may have
+	 * changed the frames of the page.
+	 * 
+	 * @param driver The driver of this context.
+	 */
+	public void apply(WebDriver driver) {
+		if (moved && used) {
+			appliedKnown = false;
+		}
+		moved = false;
+		used = !frames.isEmpty();
+		if (appliedKnown && (window == null || window.equals(appliedWindow)) && frames.equals(appliedFrames)) {
+			return;
+		}
+		try {
+			if (window != null && !window.equals(appliedWindow)) {
+				driver.switchTo().window(window);
+				appliedWindow = window;
+				appliedFrames.clear();
+				appliedKnown = true;
+			}
+			if (!appliedKnown) {
+				driver.switchTo().defaultContent();
+				appliedFrames.clear();
+				appliedKnown = true;
+			}
+			int common = 0;
+			while (common < frames.size() && common < appliedFrames.size()
+					&& frames.get(common).equals(appliedFrames.get(common))) {
+				common++;
+			}
+			int levelsUp = appliedFrames.size() - common;
+			if (levelsUp > 0) {
+				if (levelsUp <= common + 1) {
+					for (int i = 0; i < levelsUp; i++) {
+						driver.switchTo().parentFrame();
+						appliedFrames.remove(appliedFrames.size() - 1);
+					}
+				} else {
+					driver.switchTo().defaultContent();
+					appliedFrames.clear();
+					common = 0;
+				}
+			}
+			for (int i = common; i < frames.size(); i++) {
+				driver.switchTo().frame(frames.get(i));
+				appliedFrames.add(frames.get(i));
+			}
+		} catch (RuntimeException e) {
+			appliedKnown = false;
+			throw e;
+		}
+	}
+
+	/**
+	 * @return The key of the current context (window and frame path), used to
+	 *         group the cached elements.
+	 */
+	public String key() {
+		return key(currentWindow(), frames);
+	}
+
+	public List<String> getFramePath() {
+		return new ArrayList<String>(frames);
+	}
+
+	public ElementCache getCache() {
+		return cache;
+	}
+
+	private String currentWindow() {
+		return window != null ? window : appliedWindow;
+	}
+
+	static String key(String window, List<String> frames) {
+		StringBuilder key = new StringBuilder(window == null ? "" : window).append('|');
+		if (frames != null) {
+			for (String frame : frames) {
+				key.append(frame).append('/');
+			}
+		}
+		return key.toString();
+	}
+}
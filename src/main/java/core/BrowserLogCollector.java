@@ -0,0 +1,284 @@
+package core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.zip.GZIPOutputStream;
+
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.json.Json;
+import org.openqa.selenium.logging.LogEntry;
+import org.openqa.selenium.logging.LogType;
+import org.openqa.selenium.logging.LoggingPreferences;
+
+/**
+ * Collects the browser console and performance logs of each scenario into
+ * BROWSER_LOGS_DIR/&lt;scenario&gt;.ndjson.gz (one JSON entry per line).
+ * <p>
+ * The logs are pulled in batches on the scenario thread, at the step
+ * boundaries, at most once every BROWSER_LOGS_INTERVAL_MS, and once more when
+ * the scenario ends. WebDriver sessions don't take concurrent commands, so the
+ * pull can't happen in another thread, but it is the only work done by the
+ * scenario: the batches go through a bounded queue to a single writer thread
+ * that formats and compresses them. When the queue is full the batch is
+ * dropped and counted instead of blocking the scenario; only the end of a
+ * scenario file waits for room, so every file is closed.
+ * <p>
+ * Browsers that don't support the log endpoint (I.e: Firefox) are detected on
+ * the first pull and skipped for the rest of the session.
+ *
+ * @author Bruno Fraga
+ *
+ */
+public class BrowserLogCollector {
+
+	private static final Json json = new Json();
+
+	private static final Batch END = new Batch(null, null, null);
+
+	private static final BlockingQueue<Batch> queue = new ArrayBlockingQueue<Batch>(1000);
+
+	private static final AtomicLong dropped = new AtomicLong();
+
+	private static final ThreadLocal<Capture> captures = new ThreadLocal<Capture>();
+
+	private static Thread writer;
+
+	/**
+	 * The logs of the scenario running on a thread.
+	 */
+	private static class Capture {
+		private final File file;
+		private WebDriver driver;
+		private List<String> types;
+		private long lastPull;
+		private boolean collected;
+
+		private Capture(File file) {
+			this.file = file;
+		}
+	}
+
+	/**
+	 * A batch of entries of one log type, or the end of a scenario file when the
+	 * entries are null.
+	 */
+	private static class Batch {
+		private final File file;
+		private final String type;
+		private final List<LogEntry> entries;
+
+		private Batch(File file, String type, List<LogEntry> entries) {
+			this.file = file;
+			this.type = type;
+			this.entries = entries;
+		}
+	}
+
+	private BrowserLogCollector() {
+	}
+
+	/**
+	 * @return The logging preferences that make the browser keep the console and
+	 *         performance logs, to be set on the browser options.
+	 */
+	public static LoggingPreferences preferences() {
+		LoggingPreferences preferences = new LoggingPreferences();
+		preferences.enable(LogType.BROWSER, Level.ALL);
+		preferences.enable(LogType.PERFORMANCE, Level.INFO);
+		return preferences;
+	}
+
+	/**
+	 * Starts the log file of a scenario. Must be called before each scenario.
+	 *
+	 * @param scenario Name of the scenario.
+	 */
+	public static void startScenario(String scenario) {
+		if (!ProjectProperties.BROWSER_LOGS) {
+			return;
+		}
+		String name = scenario.replaceAll("[^a-zA-Z0-9-_]+", "_") + "-" + System.currentTimeMillis() + "-"
+				+ Thread.currentThread().getId();
+		captures.set(new Capture(new File(ProjectProperties.BROWSER_LOGS_DIR, name + ".ndjson.gz")));
+	}
+
+	/**
+	 * Pulls the logs if BROWSER_LOGS_INTERVAL_MS passed since the last pull. Must
+	 * be called after each step.
+	 */
+	public static void afterStep() {
+		Capture capture = captures.get();
+		if (capture != null && System.currentTimeMillis() - capture.lastPull >= ProjectProperties.BROWSER_LOGS_INTERVAL_MS) {
+			pull(capture);
+		}
+	}
+
+	/**
+	 * Pulls the remaining logs and closes the log file of the scenario. Must be
+	 * called after each scenario, before the session is closed.
+	 *
+	 * @return The log file of the scenario, or null if nothing was collected.
+	 */
+	public static File endScenario() {
+		Capture capture = captures.get();
+		captures.remove();
+		if (capture == null) {
+			return null;
+		}
+		pull(capture);
+		if (!capture.collected) {
+			return null;
+		}
+		enqueue(new Batch(capture.file, null, null));
+		return capture.file;
+	}
+
+	/**
+	 * @return A line with the number of batches dropped because the writer
+	 *         couldn't keep up.
+	 */
+	public static String getStatistics() {
+		return "Browser logs: " + dropped.get() + " batch(es) dropped";
+	}
+
+	private static void pull(Capture capture) {
+		WebDriver driver = DriverFactory.getCurrentDriver();
+		if (driver == null) {
+			return;
+		}
+		if (capture.driver != driver) {
+			capture.driver = driver;
+			capture.types = types(driver);
+		}
+		for (String type : capture.types) {
+			try {
+				List<LogEntry> entries = driver.manage().logs().get(type).getAll();
+				if (!entries.isEmpty()) {
+					enqueue(new Batch(capture.file, type, entries));
+					capture.collected = true;
+				}
+			} catch (RuntimeException e) {
+				// The log type isn't available in this session after all.
+			}
+		}
+		capture.lastPull = System.currentTimeMillis();
+	}
+
+	private static List<String> types(WebDriver driver) {
+		List<String> types = new ArrayList<String>();
+		try {
+			Set<String> available = driver.manage().logs().getAvailableLogTypes();
+			for (String type : new String[] { LogType.BROWSER, LogType.PERFORMANCE }) {
+				if (available.contains(type)) {
+					types.add(type);
+				}
+			}
+		} catch (RuntimeException e) {
+			// The driver doesn't implement the log endpoint.
+		}
+		return types;
+	}
+
+	private static void enqueue(Batch batch) {
+		startWriter();
+		if (batch.entries != null) {
+			if (!queue.offer(batch)) {
+				dropped.incrementAndGet();
+			}
+			return;
+		}
+		// A dropped end would leave the gzip file open and unreadable.
+		try {
+			queue.put(batch);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static synchronized void startWriter() {
+		if (writer == null) {
+			writer = new Thread(BrowserLogCollector::write, "browser-log-writer");
+			writer.setDaemon(true);
+			writer.start();
+			Runtime.getRuntime().addShutdownHook(new Thread(BrowserLogCollector::drain));
+		}
+	}
+
+	private static void write() {
+		Map<File, Writer> files = new HashMap<File, Writer>();
+		while (true) {
+			Batch batch;
+			try {
+				batch = queue.take();
+			} catch (InterruptedException e) {
+				break;
+			}
+			if (batch == END) {
+				break;
+			}
+			try {
+				Writer out = files.get(batch.file);
+				if (batch.entries == null) {
+					if (out != null) {
+						out.close();
+						files.remove(batch.file);
+					}
+					continue;
+				}
+				if (out == null) {
+					batch.file.getParentFile().mkdirs();
+					out = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(batch.file)),
+							StandardCharsets.UTF_8);
+					files.put(batch.file, out);
+				}
+				for (LogEntry entry : batch.entries) {
+					Map<String, Object> record = new LinkedHashMap<String, Object>();
+					record.put("timestamp", entry.getTimestamp());
+					record.put("type", batch.type);
+					record.put("level", entry.getLevel().getName());
+					record.put("message", entry.getMessage());
+					StringBuilder line = new StringBuilder();
+					json.newOutput(line).setPrettyPrint(false).write(record);
+					out.write(line.append('\n').toString());
+				}
+			} catch (IOException e) {
+				System.out.println("It wasn't possible to write the browser logs: " + e.getMessage());
+			}
+		}
+		for (Writer out : files.values()) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				System.out.println("It wasn't possible to close the browser logs: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Lets the writer finish the queued batches and close the files before the
+	 * JVM exits.
+	 */
+	private static void drain() {
+		try {
+			queue.put(END);
+			writer.join(TimeUnit.SECONDS.toMillis(10));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package core;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.pagefactory.Annotations;
+import org.openqa.selenium.support.pagefactory.ElementLocator;
+
+/**
+ * Finds the element of a page-object field (annotated with @FindBy, @FindBys or
+ * @FindAll) through the {@link ElementCache} of the current window and frame.
+ * The element is found on the first use and reused until the window navigates
+ * or the element is evicted because it became stale. Lists are found again on
+ * every use. The driver is asked for on every use, even when the element comes
+ * from the cache, so the window and frame path are applied before the element
+ * command.
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class CachedElementLocator implements ElementLocator {
+
+	private final By locator;
+
+	public CachedElementLocator(Field field) {
+		this.locator = new Annotations(field).buildBy();
+	}
+
+	@Override
+	public WebElement findElement() {
+		BrowserContext context = DriverFactory.getContext();
+		WebDriver driver = DriverFactory.getDriver();
+		WebElement element = context.getCache().get(context.key(), locator);
+		if (element == null) {
+			element = driver.findElement(locator);
+			context.getCache().put(context.key(), locator, element);
+		}
+		return element;
+	}
+
+	/**
+	 * Lists aren't cached: a click or a script can add or remove items without
+	 * navigating, so the list is found again every time, as the default
+	 * PageFactory locator does.
+	 */
+	@Override
+	public List<WebElement> findElements() {
+		return DriverFactory.getDriver().findElements(locator);
+	}
+
+	/**
+	 * Removes the element of this locator from the cache of the current window
+	 * and frame, so the next use finds it again.
+	 */
+	public void evict() {
+		BrowserContext context = DriverFactory.getContext();
+		context.getCache().remove(context.key(), locator);
+	}
+
+	public By getLocator() {
+		return locator;
+	}
+
+	@Override
+	public String toString() {
+		return "CachedElementLocator " + locator;
+	}
+}
@@ -0,0 +1,143 @@
+package core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.WrapsElement;
+import org.openqa.selenium.interactions.Locatable;
+import org.openqa.selenium.support.pagefactory.DefaultFieldDecorator;
+import org.openqa.selenium.support.pagefactory.ElementLocator;
+
+/**
+ * Turns the WebElement and List&lt;WebElement&gt; fields of a page object,
+ * annotated with @FindBy, @FindBys or @FindAll, into lazy proxies. Nothing is
+ * sent to the driver when the page object is created; each element is found on
+ * its first use through a {@link CachedElementLocator} and reused while the
+ * page doesn't navigate. When a command fails because the element is stale, it
+ * is found again and the command is repeated once. Lists aren't cached: each
+ * call on a list finds it again.
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class CachedFieldDecorator extends DefaultFieldDecorator {
+
+	private static final Class<?>[] INTERFACES = { WebElement.class, WrapsElement.class, Locatable.class };
+
+	public CachedFieldDecorator() {
+		super(field -> new CachedElementLocator(field));
+	}
+
+	@Override
+	protected WebElement proxyForLocator(ClassLoader loader, ElementLocator locator) {
+		final CachedElementLocator cached = (CachedElementLocator) locator;
+		return element(loader, new Element() {
+			@Override
+			public WebElement resolve() {
+				return cached.findElement();
+			}
+
+			@Override
+			public void evict() {
+				cached.evict();
+			}
+
+			@Override
+			public String toString() {
+				return "Proxy element for: " + cached.getLocator();
+			}
+		});
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	protected List<WebElement> proxyForListLocator(final ClassLoader loader, ElementLocator locator) {
+		final CachedElementLocator cached = (CachedElementLocator) locator;
+		return (List<WebElement>) Proxy.newProxyInstance(loader, new Class<?>[] { List.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						// Found again on every call, so size() and isEmpty() see the items added or
+						// removed since the last one.
+						final List<WebElement> found = cached.findElements();
+						List<WebElement> items = new ArrayList<WebElement>();
+						for (int i = 0; i < found.size(); i++) {
+							final int index = i;
+							items.add(element(loader, new Element() {
+								private WebElement current = found.get(index);
+
+								@Override
+								public WebElement resolve() {
+									if (current == null) {
+										List<WebElement> elements = cached.findElements();
+										if (index >= elements.size()) {
+											throw new StaleElementReferenceException("The list " + cached.getLocator()
+													+ " no longer has an element at index " + index);
+										}
+										current = elements.get(index);
+									}
+									return current;
+								}
+
+								@Override
+								public void evict() {
+									current = null;
+								}
+
+								@Override
+								public String toString() {
+									return "Proxy element " + index + " for: " + cached.getLocator();
+								}
+							}));
+						}
+						try {
+							return method.invoke(items, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+	}
+
+	/**
+	 * How an element proxy finds its element and drops it from the cache.
+	 */
+	private interface Element {
+		WebElement resolve();
+
+		void evict();
+	}
+
+	private static WebElement element(ClassLoader loader, final Element element) {
+		return (WebElement) Proxy.newProxyInstance(loader, INTERFACES, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if ("toString".equals(method.getName()) && method.getParameterTypes().length == 0) {
+					return element.toString();
+				}
+				if (method.getDeclaringClass() == WrapsElement.class) {
+					return element.resolve();
+				}
+				try {
+					return method.invoke(element.resolve(), args);
+				} catch (InvocationTargetException e) {
+					if (!(e.getCause() instanceof StaleElementReferenceException)) {
+						throw e.getCause();
+					}
+				}
+				element.evict();
+				try {
+					return method.invoke(element.resolve(), args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		});
+	}
+}
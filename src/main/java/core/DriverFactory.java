@@ -1,11 +1,29 @@
 package core;
 
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import org.openqa.selenium.MutableCapabilities;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeDriverService;
+import org.openqa.selenium.chrome.ChromeOptions;
 import org.openqa.selenium.edge.EdgeDriver;
+import org.openqa.selenium.edge.EdgeDriverService;
+import org.openqa.selenium.edge.EdgeOptions;
 import org.openqa.selenium.firefox.FirefoxDriver;
+import org.openqa.selenium.firefox.FirefoxOptions;
+import org.openqa.selenium.firefox.GeckoDriverService;
+import org.openqa.selenium.remote.CapabilityType;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.service.DriverService;
+
+import util.Utils;
 
 /**
+ * Creates and keeps the browser session. Each thread has its own session, so
+ * the parallel runners of the runner package can run one scenario per thread.
  * 
  * @author Bruno Fraga
  *
@@ -13,35 +31,159 @@ import org.openqa.selenium.firefox.FirefoxDriver;
 
 public class DriverFactory {
 
-	private static WebDriver driver;
+	private static final ThreadLocal<WebDriver> driver = new ThreadLocal<WebDriver>();
+
+	private static final ThreadLocal<DriverService> service = new ThreadLocal<DriverService>();
+
+	private static final ThreadLocal<BrowserContext> context = new ThreadLocal<BrowserContext>() {
+		@Override
+		protected BrowserContext initialValue() {
+			return new BrowserContext();
+		}
+	};
+	
+	private static final ThreadLocal<Utils> utils = new ThreadLocal<Utils>() {
+		@Override
+		protected Utils initialValue() {
+			return new Utils();
+		}
+	};
 	
 	private DriverFactory() {}
 	
 	public static WebDriver getDriver() {
 
-		if(driver == null) {
-			switch (ProjectProperties.browser) {
+		if(driver.get() == null) {
+			if (ProjectProperties.TABS_PER_BROWSER > 1) {
+				SharedBrowser.Tab tab = SharedBrowser.openTab();
+				driver.set(tab.getDriver());
+				service.set(tab.getService());
+			} else {
+				driver.set(createDriver());
+			}
+			MemoryWatchdog.sessionStarted(driver.get());
+		}
+		context.get().apply(driver.get());
+		return driver.get();
+	}
+
+	/**
+	 * Starts a new browser of ProjectProperties.browser and keeps its driver
+	 * server as the service of the current thread.
+	 * 
+	 * @return The driver of the new browser.
+	 */
+	static WebDriver createDriver() {
+		String remote = ProjectProperties.REMOTE_URL;
+		if (remote.isEmpty() && ProjectProperties.ROUTER_NODES > 0) {
+			remote = SessionRouter.getLocal().getUrl();
+		}
+		if (!remote.isEmpty()) {
+			return createRemoteDriver(remote);
+		}
+		WebDriver created = null;
+		switch (ProjectProperties.browser) {
 			case CHROME:
 				System.setProperty("webdriver.chrome.driver", "./src/main/resources/drivers/chromedriver.exe");
-				driver = new ChromeDriver();
+				ChromeDriverService chromeService = ChromeDriverService.createDefaultService();
+				service.set(chromeService);
+				created = ProjectProperties.POOLED_COMMAND_EXECUTOR
+						? new RemoteWebDriver(new PooledCommandExecutor(chromeService), chromeOptions())
+						: new ChromeDriver(chromeService, chromeOptions());
 				break;
 			case FIREFOX:
 				System.setProperty("webdriver.gecko.driver", "./src/main/resources/drivers/geckodriver.exe");
-				driver = new FirefoxDriver();
+				GeckoDriverService geckoService = GeckoDriverService.createDefaultService();
+				service.set(geckoService);
+				FirefoxOptions firefoxOptions = new FirefoxOptions().setHeadless(ProjectProperties.HEADLESS);
+				created = ProjectProperties.POOLED_COMMAND_EXECUTOR
+						? new RemoteWebDriver(new PooledCommandExecutor(geckoService), firefoxOptions)
+						: new FirefoxDriver(geckoService, firefoxOptions);
 				break;
 			case EDGE:
 				System.setProperty("webdriver.edge.driver", "./src/main/resources/drivers/msedgedriver.exe");
-				driver = new EdgeDriver();
+				EdgeDriverService edgeService = EdgeDriverService.createDefaultService();
+				service.set(edgeService);
+				created = ProjectProperties.POOLED_COMMAND_EXECUTOR
+						? new RemoteWebDriver(new PooledCommandExecutor(edgeService), new EdgeOptions())
+						: new EdgeDriver(edgeService);
 				break;
-			}
 		}
-		return driver;
+		return created;
+	}
+
+	/**
+	 * Starts a session of ProjectProperties.browser on a remote WebDriver endpoint
+	 * (I.e: a {@link SessionRouter} or a Selenium Grid). There's no local driver
+	 * server, so the service of the current thread stays empty.
+	 */
+	private static WebDriver createRemoteDriver(String url) {
+		MutableCapabilities options;
+		switch (ProjectProperties.browser) {
+			case CHROME:
+				options = chromeOptions();
+				break;
+			case EDGE:
+				options = new EdgeOptions();
+				break;
+			default:
+				options = new FirefoxOptions().setHeadless(ProjectProperties.HEADLESS);
+				break;
+		}
+		try {
+			URL remote = new URL(url);
+			return new RemoteWebDriver(ProjectProperties.POOLED_COMMAND_EXECUTOR ? new PooledCommandExecutor(remote)
+					: new HttpCommandExecutor(remote), options);
+		} catch (MalformedURLException e) {
+			throw new IllegalArgumentException("Invalid remote WebDriver URL: " + url, e);
+		}
+	}
+
+	private static ChromeOptions chromeOptions() {
+		ChromeOptions chromeOptions = new ChromeOptions().setHeadless(ProjectProperties.HEADLESS);
+		if (ProjectProperties.BROWSER_LOGS) {
+			chromeOptions.setCapability(CapabilityType.LOGGING_PREFS, BrowserLogCollector.preferences());
+			chromeOptions.setCapability("goog:loggingPrefs", BrowserLogCollector.preferences());
+		}
+		return chromeOptions;
+	}
+
+	/**
+	 * @return The current driver, without creating one. Null if there isn't any.
+	 */
+	public static WebDriver getCurrentDriver() {
+		return driver.get();
+	}
+
+	/**
+	 * @return The driver server of the current driver. Null if there isn't any.
+	 */
+	public static DriverService getService() {
+		return service.get();
+	}
+
+	/**
+	 * @return The Utils of the current session, shared by its page objects (Utils
+	 *         has no state of its own).
+	 */
+	public static Utils getUtils() {
+		return utils.get();
+	}
+
+	/**
+	 * @return The window and frame tracking of the current driver.
+	 */
+	public static BrowserContext getContext() {
+		return context.get();
 	}
 	
 	public static void killDriver() {
-		if(driver != null) {
-			driver.quit();
-			driver = null;
+		if(driver.get() != null) {
+			driver.get().quit();
+			driver.remove();
 		}
+		service.remove();
+		context.remove();
+		utils.remove();
 	}
 }
@@ -0,0 +1,62 @@
+package core;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+
+/**
+ * Elements already located, grouped by the browsing context (window and frame
+ * path) where they were found. Switching frames or windows does not remove
+ * anything: each context keeps its own entries and only sees them while it is
+ * the current one. Navigating a window removes the entries of that window.
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class ElementCache {
+
+	private final Map<String, Map<String, WebElement>> contexts = new HashMap<String, Map<String, WebElement>>();
+
+	public WebElement get(String context, By locator) {
+		Map<String, WebElement> elements = contexts.get(context);
+		return elements == null ? null : elements.get(locator.toString());
+	}
+
+	public void put(String context, By locator, WebElement element) {
+		Map<String, WebElement> elements = contexts.get(context);
+		if (elements == null) {
+			elements = new HashMap<String, WebElement>();
+			contexts.put(context, elements);
+		}
+		elements.put(locator.toString(), element);
+	}
+
+	public void remove(String context, By locator) {
+		Map<String, WebElement> elements = contexts.get(context);
+		if (elements != null) {
+			elements.remove(locator.toString());
+		}
+	}
+
+	/**
+	 * Removes the entries of a window, including the ones found inside its frames.
+	 * 
+	 * @param window Window handle.
+	 */
+	public void invalidateWindow(String window) {
+		String prefix = BrowserContext.key(window, null);
+		Iterator<String> keys = contexts.keySet().iterator();
+		while (keys.hasNext()) {
+			if (keys.next().startsWith(prefix)) {
+				keys.remove();
+			}
+		}
+	}
+
+	public void clear() {
+		contexts.clear();
+	}
+}
@@ -0,0 +1,149 @@
+package core;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+import org.openqa.selenium.WebDriver;
+
+/**
+ * Watches the browser session that is reused among scenarios. After each
+ * scenario it samples the resident memory of the driver server and of the
+ * browser processes started by it (read from /proc on Linux) and writes the
+ * sample to {@link ProjectProperties#MEMORY_SAMPLES_FILE}. When one of the
+ * RECYCLE_* limits of {@link ProjectProperties} is reached, the session is
+ * closed and the next scenario starts a new one.
+ * <p>
+ * With TABS_PER_BROWSER greater than 1 the sample is the memory of the whole
+ * shared browser, and closing the session only closes a tab, so
+ * RECYCLE_MEMORY_MB isn't applied. It isn't applied either when the processes
+ * of the session can't be identified (I.e: sessions of REMOTE_URL or of
+ * ROUTER_NODES, which have no driver server of their own): the sample is then
+ * the memory of every process started by this JVM, recorded with the scope
+ * "unattributed".
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class MemoryWatchdog {
+
+	private static final String HEADER = "timestamp,thread,session_age_s,scenarios,rss_mb,processes,scope,scenario,recycle_reason";
+
+	private static final ThreadLocal<Session> sessions = new ThreadLocal<Session>();
+
+	/**
+	 * The session watched by a thread.
+	 */
+	private static class Session {
+		private final WebDriver driver;
+		private final long start = System.currentTimeMillis();
+		private int scenarios;
+
+		private Session(WebDriver driver) {
+			this.driver = driver;
+		}
+	}
+
+	private MemoryWatchdog() {
+	}
+
+	/**
+	 * Starts watching a new session of the current thread, so its age counts from
+	 * the creation of the driver. Called by DriverFactory.
+	 *
+	 * @param driver The driver just created.
+	 */
+	public static void sessionStarted(WebDriver driver) {
+		sessions.set(new Session(driver));
+	}
+
+	/**
+	 * Samples the memory of the current session and recycles it if a limit was
+	 * reached. Must be called after each scenario.
+	 * 
+	 * @param scenario Name of the scenario that just finished.
+	 */
+	public static void afterScenario(String scenario) {
+		WebDriver driver = DriverFactory.getCurrentDriver();
+		if (driver == null) {
+			return;
+		}
+		Session session = sessions.get();
+		if (session == null || session.driver != driver) {
+			// Created without DriverFactory.getDriver(): the age counts from here.
+			session = new Session(driver);
+			sessions.set(session);
+		}
+		int scenarios = ++session.scenarios;
+
+		long ageSeconds = (System.currentTimeMillis() - session.start) / 1000;
+		long[] memory = sampleSession();
+		long rssMb = memory[0] < 0 ? -1 : memory[0] / 1024;
+		String scope = ProjectProperties.TABS_PER_BROWSER > 1 ? "browser" : memory[2] == 1 ? "session" : "unattributed";
+
+		String reason = "";
+		if (ProjectProperties.RECYCLE_MEMORY_MB > 0 && "session".equals(scope)
+				&& rssMb >= ProjectProperties.RECYCLE_MEMORY_MB) {
+			reason = "memory";
+		} else if (ProjectProperties.RECYCLE_AFTER_SCENARIOS > 0 && scenarios >= ProjectProperties.RECYCLE_AFTER_SCENARIOS) {
+			reason = "scenarios";
+		} else if (ProjectProperties.RECYCLE_AFTER_MINUTES > 0 && ageSeconds >= ProjectProperties.RECYCLE_AFTER_MINUTES * 60L) {
+			reason = "age";
+		}
+		write(ageSeconds, scenarios, rssMb, memory[1], scope, scenario, reason);
+
+		if (!reason.isEmpty()) {
+			System.out.println("Recycling the browser session (" + reason + "): " + rssMb + " MB, " + scenarios
+					+ " scenario(s), " + ageSeconds + " s");
+			DriverFactory.killDriver();
+			sessions.remove();
+		}
+	}
+
+	/**
+	 * @return The resident memory (kB) and the number of processes of the driver
+	 *         server of the current session and of everything it started, and 1
+	 *         if they were found or 0 if they weren't. If the driver server can't
+	 *         be found, all processes started by this JVM are counted. The memory
+	 *         is -1 where /proc isn't available.
+	 */
+	public static long[] sampleSession() {
+		if (!ProcessTree.isSupported()) {
+			return new long[] { -1, 0, 0 };
+		}
+		int jvm = ProcessTree.currentPid();
+		int root = -1;
+		if (DriverFactory.getService() != null) {
+			root = ProcessTree.findDescendant(jvm, "--port=" + DriverFactory.getService().getUrl().getPort());
+		}
+		List<Integer> processes = ProcessTree.descendantsOf(root > 0 ? root : jvm);
+		long rssKb = 0;
+		if (root > 0) {
+			rssKb += ProcessTree.residentKb(root);
+		}
+		for (Integer pid : processes) {
+			rssKb += ProcessTree.residentKb(pid);
+		}
+		return new long[] { rssKb, processes.size() + (root > 0 ? 1 : 0), root > 0 ? 1 : 0 };
+	}
+
+	private static synchronized void write(long ageSeconds, int scenarios, long rssMb, long processes,
+			String scope, String scenario, String reason) {
+		File file = new File(ProjectProperties.MEMORY_SAMPLES_FILE);
+		boolean header = !file.exists();
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		try (PrintWriter writer = new PrintWriter(new FileWriter(file, true))) {
+			if (header) {
+				writer.println(HEADER);
+			}
+			writer.println(System.currentTimeMillis() + "," + Thread.currentThread().getName() + "," + ageSeconds + "," + scenarios + "," + rssMb + ","
+					+ processes + "," + scope + ",\"" + scenario.replace("\"", "\"\"") + "\"," + reason);
+		} catch (IOException e) {
+			System.out.println("It wasn't possible to write the memory sample: " + e.getMessage());
+		}
+	}
+}
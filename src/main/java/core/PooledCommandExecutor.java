@@ -0,0 +1,246 @@
+package core;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.SocketFactory;
+
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.CommandInfo;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.http.HttpClient;
+import org.openqa.selenium.remote.http.HttpMethod;
+import org.openqa.selenium.remote.http.HttpRequest;
+import org.openqa.selenium.remote.http.HttpResponse;
+import org.openqa.selenium.remote.service.DriverService;
+
+import okhttp3.ConnectionPool;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okio.BufferedSource;
+import okio.Okio;
+
+/**
+ * Sends the WebDriver commands of a session through one HTTP client shared by
+ * every session of the JVM. Enabled by ProjectProperties.POOLED_COMMAND_EXECUTOR
+ * (off by default).
+ * <p>
+ * Selenium already shares one connection pool among the drivers (a static
+ * client factory with the default pool of OkHttp: 5 idle connections, kept 5
+ * minutes), but it empties the whole pool every time any session quits, so
+ * the other workers connect again on their next command. Here the pool keeps
+ * HTTP_POOL_SIZE idle connections for HTTP_KEEP_ALIVE_S, isn't emptied on
+ * quit, and the sockets have TCP_NODELAY so a small command isn't held back by
+ * the Nagle algorithm. The request and response bodies go through the segment
+ * pool of okio, which reuses its buffers between commands.
+ * <p>
+ * The commands aren't pipelined: the commands of a session depend on each
+ * other (the element of a click is the result of the previous find) and the
+ * driver servers run them one at a time, so a session keeps one command in
+ * flight on one connection.
+ * <p>
+ * The driver is a plain RemoteWebDriver: the browser-specific commands of
+ * ChromeDriver (network conditions, casting, launchApp) aren't available.
+ *
+ * @author Bruno Fraga
+ *
+ */
+public class PooledCommandExecutor extends HttpCommandExecutor {
+
+	private static final String JSON = "application/json; charset=utf-8";
+
+	private static final ConnectionPool pool = new ConnectionPool(ProjectProperties.HTTP_POOL_SIZE,
+			ProjectProperties.HTTP_KEEP_ALIVE_S, TimeUnit.SECONDS);
+
+	private static final OkHttpClient shared = new OkHttpClient.Builder().connectionPool(pool)
+			.socketFactory(new NoDelaySocketFactory()).followRedirects(false).followSslRedirects(false)
+			.retryOnConnectionFailure(true).build();
+
+	private static final Factory factory = new Factory();
+
+	private final DriverService service;
+
+	/**
+	 * @param service The driver server of the session. It's started with the
+	 *                session and stopped when the session quits.
+	 */
+	public PooledCommandExecutor(DriverService service) {
+		super(Collections.<String, CommandInfo>emptyMap(), service.getUrl(), factory);
+		this.service = service;
+	}
+
+	/**
+	 * @param remote A remote WebDriver endpoint (I.e: a {@link SessionRouter}).
+	 */
+	public PooledCommandExecutor(URL remote) {
+		super(Collections.<String, CommandInfo>emptyMap(), remote, factory);
+		this.service = null;
+	}
+
+	@Override
+	public Response execute(Command command) throws IOException {
+		if (service == null) {
+			return super.execute(command);
+		}
+		if (DriverCommand.NEW_SESSION.equals(command.getName())) {
+			service.start();
+			try {
+				return super.execute(command);
+			} catch (IOException | RuntimeException e) {
+				service.stop();
+				throw e;
+			}
+		}
+		try {
+			return super.execute(command);
+		} finally {
+			if (DriverCommand.QUIT.equals(command.getName())) {
+				service.stop();
+			}
+		}
+	}
+
+	/**
+	 * @return The number of open and idle connections of the shared pool.
+	 */
+	public static String getStatistics() {
+		return "Command connections: " + pool.connectionCount() + " open, " + pool.idleConnectionCount() + " idle";
+	}
+
+	/**
+	 * Creates the clients of the executors from the shared client. They only
+	 * differ in the timeouts, and share its connection pool and dispatcher.
+	 */
+	private static class Factory implements HttpClient.Factory {
+
+		@Override
+		public HttpClient.Builder builder() {
+			return new HttpClient.Builder() {
+				@Override
+				public HttpClient createClient(URL url) {
+					return new Client(url, shared.newBuilder()
+							.connectTimeout(connectionTimeout.toMillis(), TimeUnit.MILLISECONDS)
+							.readTimeout(readTimeout.toMillis(), TimeUnit.MILLISECONDS).build());
+				}
+			};
+		}
+
+		@Override
+		public void cleanupIdleClients() {
+			// Called by Selenium when a session quits. The pool is shared with the other
+			// sessions, so the idle connections are left to expire with
+			// HTTP_KEEP_ALIVE_S (the ones to a driver server that was stopped are
+			// discarded when they're checked out).
+		}
+	}
+
+	private static class Client implements HttpClient {
+
+		private final String base;
+		private final OkHttpClient client;
+
+		private Client(URL url, OkHttpClient client) {
+			String base = url.toExternalForm();
+			this.base = base.endsWith("/") ? base.substring(0, base.length() - 1) : base;
+			this.client = client;
+		}
+
+		@Override
+		public HttpResponse execute(HttpRequest request) throws IOException {
+			HttpUrl url = request.getUri().startsWith("http:") || request.getUri().startsWith("https:")
+					? HttpUrl.parse(request.getUri())
+					: HttpUrl.parse(base + request.getUri());
+			if (url == null) {
+				throw new IOException("Unable to parse URL: " + base + request.getUri());
+			}
+			HttpUrl.Builder urlBuilder = url.newBuilder();
+			for (String name : request.getQueryParameterNames()) {
+				for (String value : request.getQueryParameters(name)) {
+					urlBuilder.addQueryParameter(name, value);
+				}
+			}
+			Request.Builder builder = new Request.Builder().url(urlBuilder.build());
+			for (String name : request.getHeaderNames()) {
+				for (String value : request.getHeaders(name)) {
+					builder.addHeader(name, value);
+				}
+			}
+			if (request.getMethod() == HttpMethod.POST) {
+				String type = request.getHeader("Content-Type");
+				byte[] content;
+				try (BufferedSource source = Okio.buffer(Okio.source(request.getContentStream()))) {
+					content = source.readByteArray();
+				}
+				builder.post(RequestBody.create(MediaType.parse(type == null ? JSON : type), content));
+			} else if (request.getMethod() == HttpMethod.DELETE) {
+				builder.delete();
+			} else {
+				builder.get();
+			}
+
+			try (okhttp3.Response response = client.newCall(builder.build()).execute()) {
+				HttpResponse result = new HttpResponse();
+				// Same as Selenium: a timeout of the server is an error of the command.
+				result.setStatus(response.code() == 408 ? 500 : response.code());
+				for (String name : response.headers().names()) {
+					List<String> values = response.headers(name);
+					for (String value : values) {
+						result.addHeader(name, value);
+					}
+				}
+				result.setContent(response.body().bytes());
+				return result;
+			}
+		}
+	}
+
+	/**
+	 * Opens the sockets with TCP_NODELAY.
+	 */
+	private static class NoDelaySocketFactory extends SocketFactory {
+
+		private final SocketFactory factory = SocketFactory.getDefault();
+
+		@Override
+		public Socket createSocket() throws IOException {
+			return configure(factory.createSocket());
+		}
+
+		@Override
+		public Socket createSocket(String host, int port) throws IOException {
+			return configure(factory.createSocket(host, port));
+		}
+
+		@Override
+		public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+				throws IOException {
+			return configure(factory.createSocket(host, port, localHost, localPort));
+		}
+
+		@Override
+		public Socket createSocket(InetAddress host, int port) throws IOException {
+			return configure(factory.createSocket(host, port));
+		}
+
+		@Override
+		public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+				throws IOException {
+			return configure(factory.createSocket(address, port, localAddress, localPort));
+		}
+
+		private static Socket configure(Socket socket) throws IOException {
+			socket.setTcpNoDelay(true);
+			return socket;
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package core;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the process table from /proc (Linux only). On other systems every
+ * method returns an empty result.
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class ProcessTree {
+
+	private static final File PROC = new File("/proc");
+
+	private ProcessTree() {
+	}
+
+	/**
+	 * @return True if /proc can be read on this machine.
+	 */
+	public static boolean isSupported() {
+		return new File(PROC, "self/status").canRead();
+	}
+
+	/**
+	 * @return The pid of this JVM.
+	 */
+	public static int currentPid() {
+		String name = ManagementFactory.getRuntimeMXBean().getName();
+		return Integer.parseInt(name.substring(0, name.indexOf('@')));
+	}
+
+	/**
+	 * Finds the processes started (directly or not) by a process.
+	 * 
+	 * @param pid Root process.
+	 * @return The pids of all descendants, not including the root.
+	 */
+	public static List<Integer> descendantsOf(int pid) {
+		Map<Integer, List<Integer>> children = childrenByParent();
+		List<Integer> result = new ArrayList<Integer>();
+		List<Integer> pending = new ArrayList<Integer>();
+		pending.add(pid);
+		while (!pending.isEmpty()) {
+			List<Integer> found = children.get(pending.remove(pending.size() - 1));
+			if (found != null) {
+				result.addAll(found);
+				pending.addAll(found);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Finds, among the descendants of a process, the first one whose command line
+	 * contains a fragment.
+	 * 
+	 * @param pid      Root process.
+	 * @param fragment Text that must be in the command line. I.e: "--port=9515".
+	 * @return The pid found, or -1.
+	 */
+	public static int findDescendant(int pid, String fragment) {
+		for (Integer candidate : descendantsOf(pid)) {
+			if (commandLine(candidate).contains(fragment)) {
+				return candidate;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param pid Process id.
+	 * @return The command line of the process with the arguments separated by
+	 *         spaces, or an empty text if it's gone.
+	 */
+	public static String commandLine(int pid) {
+		try {
+			byte[] content = Files.readAllBytes(new File(PROC, pid + "/cmdline").toPath());
+			return new String(content, StandardCharsets.UTF_8).replace('\0', ' ').trim();
+		} catch (IOException e) {
+			return "";
+		}
+	}
+
+	/**
+	 * @param pid Process id.
+	 * @return The resident memory of the process (VmRSS) in kB, or 0 if it's gone.
+	 */
+	public static long residentKb(int pid) {
+		try {
+			for (String line : Files.readAllLines(new File(PROC, pid + "/status").toPath(), StandardCharsets.UTF_8)) {
+				if (line.startsWith("VmRSS:")) {
+					return Long.parseLong(line.replaceAll("[^0-9]", ""));
+				}
+			}
+		} catch (IOException | NumberFormatException e) {
+		}
+		return 0;
+	}
+
+	/**
+	 * @return The memory available for new processes (MemAvailable of
+	 *         /proc/meminfo) in kB, or -1 if it can't be read.
+	 */
+	public static long availableMemoryKb() {
+		try {
+			for (String line : Files.readAllLines(new File(PROC, "meminfo").toPath(), StandardCharsets.UTF_8)) {
+				if (line.startsWith("MemAvailable:")) {
+					return Long.parseLong(line.replaceAll("[^0-9]", ""));
+				}
+			}
+		} catch (IOException | NumberFormatException e) {
+		}
+		return -1;
+	}
+
+	/**
+	 * @param pid Root process.
+	 * @return The resident memory (kB) of all descendants of a process.
+	 */
+	public static long descendantsResidentKb(int pid) {
+		long total = 0;
+		for (Integer descendant : descendantsOf(pid)) {
+			total += residentKb(descendant);
+		}
+		return total;
+	}
+
+	private static Map<Integer, List<Integer>> childrenByParent() {
+		Map<Integer, List<Integer>> children = new HashMap<Integer, List<Integer>>();
+		File[] entries = PROC.listFiles();
+		if (entries == null) {
+			return children;
+		}
+		for (File entry : entries) {
+			if (!entry.getName().matches("\\d+")) {
+				continue;
+			}
+			int parent = parentOf(entry);
+			if (parent > 0) {
+				List<Integer> list = children.get(parent);
+				if (list == null) {
+					list = new ArrayList<Integer>();
+					children.put(parent, list);
+				}
+				list.add(Integer.parseInt(entry.getName()));
+			}
+		}
+		return children;
+	}
+
+	private static int parentOf(File entry) {
+		try {
+			String stat = new String(Files.readAllBytes(new File(entry, "stat").toPath()), StandardCharsets.UTF_8);
+			// The command name may contain spaces and parentheses, the fields start after the last ')'.
+			String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+			return Integer.parseInt(fields[1]);
+		} catch (IOException | RuntimeException e) {
+			return -1;
+		}
+	}
+}
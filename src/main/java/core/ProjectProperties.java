@@ -7,6 +7,222 @@ public class ProjectProperties {
 	 */
 	public static boolean CLOSE_BROWSER = true;
 
+	/**
+	 * Define if the browser must run without a visible window (Chrome and Firefox).
+	 */
+	public static boolean HEADLESS = false;
+
+	/**
+	 * Base URL used by Utils.goToUrl() for URLs starting with "/". I.e: the URL of
+	 * a runner.FixtureServer.
+	 */
+	public static String BASE_URL = "";
+
+	/**
+	 * Directory where SessionStateCache keeps the captured login states between
+	 * runs. Empty (the default) keeps them only in memory. The files hold the
+	 * session cookies and storage tokens in plain text, so set it (I.e:
+	 * "target/session-cache") only for test accounts.
+	 */
+	public static String SESSION_CACHE_DIR = "";
+
+	/**
+	 * Time (minutes) a captured login state is reused before logging in again.
+	 */
+	public static int SESSION_CACHE_TTL_MINUTES = 30;
+
+	/**
+	 * Recycle the browser session (reused when CLOSE_BROWSER is false) after a
+	 * scenario once the driver and browser processes use this much resident memory
+	 * (MB). 0 (the default) disables the limit. I.e: 2048.
+	 */
+	public static int RECYCLE_MEMORY_MB = 0;
+
+	/**
+	 * Recycle the browser session after this number of scenarios. 0 disables the
+	 * limit.
+	 */
+	public static int RECYCLE_AFTER_SCENARIOS = 0;
+
+	/**
+	 * Recycle the browser session after it is open for this number of minutes. 0
+	 * disables the limit.
+	 */
+	public static int RECYCLE_AFTER_MINUTES = 0;
+
+	/**
+	 * CSV file that receives one memory sample of the browser session per scenario.
+	 */
+	public static String MEMORY_SAMPLES_FILE = "target/memory-samples.csv";
+
+	/**
+	 * Number of scenarios run at the same time by runner.ParallelRunner. 0 lets
+	 * the runner choose it from the cores and memory of the machine and adjust it
+	 * while the tests run.
+	 */
+	public static int WORKERS = 0;
+
+	/**
+	 * Memory (MB) expected to be used by one browser session. Used to decide how
+	 * many sessions fit in the machine.
+	 */
+	public static int BROWSER_MEMORY_ESTIMATE_MB = 600;
+
+	/**
+	 * Interval (seconds) between two adjustments of the number of workers.
+	 */
+	public static int WORKERS_ADJUST_INTERVAL = 30;
+
+	/**
+	 * CSV file that receives every decision about the number of workers.
+	 */
+	public static String WORKER_DECISIONS_FILE = "target/worker-decisions.csv";
+
+	/**
+	 * Directory where runner.ParallelRunner writes one Cucumber JSON file per
+	 * scenario. Empty disables them.
+	 */
+	public static String JSON_REPORT_DIR = "target/cucumber-json";
+
+	/**
+	 * Directory of the HTML report built by runner.ReportGenerator.
+	 */
+	public static String HTML_REPORT_DIR = "target/cucumber-html";
+
+	/**
+	 * Index of the steps, page objects and Utils methods used by each scenario,
+	 * written by runner.ImpactRecorder and read by runner.ImpactSelector.
+	 */
+	public static String IMPACT_INDEX_FILE = "target/impact-index.json";
+
+	/**
+	 * Scenarios of the feature files and glue classes written by
+	 * runner.FeatureIndex, read by the runners instead of parsing every feature
+	 * file and scanning the glue package.
+	 */
+	public static String FEATURE_INDEX_FILE = "target/feature-index.json";
+
+	/**
+	 * Strategy that found each util.HealingBy locator, reused by the next runs.
+	 */
+	public static String LOCATOR_CACHE_FILE = "target/locator-cache.json";
+
+	/**
+	 * Report of the locators that healed and of the time saved by the cache.
+	 */
+	public static String HEALED_LOCATORS_FILE = "target/healed-locators.csv";
+
+	/**
+	 * Measures every locator resolved by util.Utils (time, uses and matches) and
+	 * writes the ranking to LOCATOR_PROFILE_FILE. Each lookup uses findElements,
+	 * so the number of matches is known.
+	 */
+	public static boolean PROFILE_LOCATORS = false;
+
+	/**
+	 * Report of util.LocatorProfiler, the most expensive locators first.
+	 */
+	public static String LOCATOR_PROFILE_FILE = "target/locator-profile.csv";
+
+	/**
+	 * Collects the browser console and performance logs of each scenario into
+	 * BROWSER_LOGS_DIR (Chrome only, see core.BrowserLogCollector).
+	 */
+	public static boolean BROWSER_LOGS = false;
+
+	/**
+	 * Directory of the browser logs of the scenarios.
+	 */
+	public static String BROWSER_LOGS_DIR = "target/browser-logs";
+
+	/**
+	 * Minimum time between two pulls of the browser logs (ms). The logs are
+	 * pulled after the steps and at the end of the scenario.
+	 */
+	public static long BROWSER_LOGS_INTERVAL_MS = 2000;
+
+	/**
+	 * Number of workers that share one browser process, each one in its own tab
+	 * (see core.SharedBrowser). 0 or 1 starts one browser per worker.
+	 */
+	public static int TABS_PER_BROWSER = 0;
+
+	/**
+	 * Shard of the rows of util.DataFeed handled by this run, from 0 to
+	 * DATA_PARTITIONS - 1. Can be given per machine with -Ddata.partition=N.
+	 */
+	public static int DATA_PARTITION = Integer.getInteger("data.partition", 0);
+
+	/**
+	 * Number of shards the rows of util.DataFeed are split into
+	 * (-Ddata.partitions=N).
+	 */
+	public static int DATA_PARTITIONS = Integer.getInteger("data.partitions", 1);
+
+	/**
+	 * Number of rows done between two writes of the util.DataFeed checkpoint.
+	 */
+	public static int DATA_CHECKPOINT_INTERVAL = 1;
+
+	/**
+	 * URL of a remote WebDriver endpoint (I.e: "http://127.0.0.1:4444" for a
+	 * core.SessionRouter, or a Selenium Grid). Empty to start the browsers locally.
+	 */
+	public static String REMOTE_URL = "";
+
+	/**
+	 * When REMOTE_URL is empty and this is greater than 0, the sessions go through
+	 * an embedded core.SessionRouter with this number of local driver servers.
+	 */
+	public static int ROUTER_NODES = 0;
+
+	/**
+	 * Maximum number of sessions of each driver server of the router (always 1
+	 * for Firefox).
+	 */
+	public static int ROUTER_SESSIONS_PER_NODE = 2;
+
+	/**
+	 * Maximum time a new session waits in the router queue for a free node (s).
+	 */
+	public static int ROUTER_QUEUE_TIMEOUT_S = 300;
+
+	/**
+	 * Time without commands after which the router deletes a session and frees
+	 * its place (s). 0 keeps the sessions until they're deleted by the runner.
+	 */
+	public static int ROUTER_IDLE_TIMEOUT_S = 300;
+
+	/**
+	 * Sends the commands of every driver through core.PooledCommandExecutor
+	 * (a larger keep-alive pool that isn't emptied when a session quits, and
+	 * TCP_NODELAY). The drivers become plain RemoteWebDriver, without the
+	 * browser-specific commands of ChromeDriver, FirefoxDriver and EdgeDriver.
+	 */
+	public static boolean POOLED_COMMAND_EXECUTOR = false;
+
+	/**
+	 * Maximum number of idle connections kept by the command executor.
+	 */
+	public static int HTTP_POOL_SIZE = 16;
+
+	/**
+	 * Time an idle connection of the command executor is kept open (s).
+	 */
+	public static long HTTP_KEEP_ALIVE_S = 300;
+
+	/**
+	 * Time budget of each scenario (s), shared by all of its waits (see
+	 * util.ScenarioBudget). A "@budget=90" tag overrides it. 0 for no budget.
+	 */
+	public static long SCENARIO_BUDGET_S = 0;
+
+	/**
+	 * Report of util.ScenarioBudget: budget, time used and time waited of each
+	 * scenario.
+	 */
+	public static String SCENARIO_BUDGET_FILE = "target/scenario-budget.csv";
+
 	/**
 	 * Define which browser should be used to run the tests.
 	 */
@@ -0,0 +1,528 @@
+package core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openqa.selenium.chrome.ChromeDriverService;
+import org.openqa.selenium.edge.EdgeDriverService;
+import org.openqa.selenium.firefox.GeckoDriverService;
+import org.openqa.selenium.json.Json;
+import org.openqa.selenium.remote.service.DriverService;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A small WebDriver endpoint that spreads the sessions among several driver
+ * servers (nodes). A new-session request goes to the node with the fewest
+ * sessions for its capacity, waiting in a queue while every node is full; the
+ * other commands are proxied to the node that owns the session.
+ * <p>
+ * GET /metrics returns the number of sessions (active, created, queued, per
+ * node), the queue wait and the latency added by the router, in the Prometheus
+ * text format.
+ * <p>
+ * A session without commands for ROUTER_IDLE_TIMEOUT_S (I.e: its runner died
+ * without quitting it) is deleted on its node and its place is given to the
+ * sessions in the queue.
+ * <p>
+ * DriverFactory uses an embedded router with ROUTER_NODES local driver servers
+ * of ProjectProperties.browser when ROUTER_NODES is greater than 0. It can also
+ * run alone, so runners on other machines point REMOTE_URL to it:
+ * <p>
+ * Usage: SessionRouter [--port 4444] [--nodes 4] [--sessions 2]
+ *
+ * @author Bruno Fraga
+ *
+ */
+public class SessionRouter {
+
+	private static final Json json = new Json();
+
+	private static SessionRouter local;
+
+	private final List<Node> nodes = new ArrayList<Node>();
+	private final List<DriverService> services = new ArrayList<DriverService>();
+	private final Map<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+	private HttpServer server;
+	private ScheduledExecutorService reaper;
+
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong expired = new AtomicLong();
+	private final AtomicLong queueWaitNanos = new AtomicLong();
+	private final AtomicLong queueWaitMaxNanos = new AtomicLong();
+	private final AtomicLong commands = new AtomicLong();
+	private final AtomicLong upstreamNanos = new AtomicLong();
+	private final AtomicLong overheadNanos = new AtomicLong();
+	private final AtomicLong overheadMaxNanos = new AtomicLong();
+
+	/**
+	 * A driver server and the sessions it has.
+	 */
+	private static class Node {
+		private final String url;
+		private final int capacity;
+		private int active;
+
+		private Node(String url, int capacity) {
+			this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+			this.capacity = capacity;
+		}
+	}
+
+	/**
+	 * A session and the node that owns it.
+	 */
+	private static class Session {
+		private final Node node;
+		private final AtomicInteger running = new AtomicInteger();
+		private volatile long lastUsed = System.nanoTime();
+
+		private Session(Node node) {
+			this.node = node;
+		}
+	}
+
+	/**
+	 * @param nodeUrls        Base URLs of the driver servers (I.e:
+	 *                        "http://127.0.0.1:9515").
+	 * @param sessionsPerNode Maximum number of sessions of each node.
+	 */
+	public SessionRouter(List<String> nodeUrls, int sessionsPerNode) {
+		for (String url : nodeUrls) {
+			nodes.add(new Node(url, Math.max(1, sessionsPerNode)));
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = 4444;
+		int count = 4;
+		int sessions = ProjectProperties.ROUTER_SESSIONS_PER_NODE;
+		for (int i = 0; i < args.length - 1; i++) {
+			if ("--port".equals(args[i])) {
+				port = Integer.parseInt(args[++i]);
+			} else if ("--nodes".equals(args[i])) {
+				count = Integer.parseInt(args[++i]);
+			} else if ("--sessions".equals(args[i])) {
+				sessions = Integer.parseInt(args[++i]);
+			}
+		}
+		SessionRouter router = withLocalNodes(count, sessions);
+		router.start(port);
+		System.out.println("Session router on " + router.getUrl() + " with " + count + " node(s), metrics on "
+				+ router.getUrl() + "/metrics");
+	}
+
+	/**
+	 * @return The router embedded in this JVM, started on the first call with
+	 *         ROUTER_NODES local driver servers.
+	 */
+	public static synchronized SessionRouter getLocal() {
+		if (local == null) {
+			SessionRouter router = withLocalNodes(ProjectProperties.ROUTER_NODES,
+					ProjectProperties.ROUTER_SESSIONS_PER_NODE);
+			try {
+				router.start(0);
+			} catch (IOException e) {
+				router.stop();
+				throw new IllegalStateException("It wasn't possible to start the session router", e);
+			}
+			local = router;
+		}
+		return local;
+	}
+
+	/**
+	 * Starts the driver servers of ProjectProperties.browser and a router for
+	 * them. The driver servers are stopped with the router or when the JVM exits.
+	 *
+	 * @param count           Number of driver servers.
+	 * @param sessionsPerNode Maximum number of sessions of each one.
+	 * @return The router, not started yet.
+	 */
+	public static SessionRouter withLocalNodes(int count, int sessionsPerNode) {
+		if (ProjectProperties.browser == ProjectProperties.Browsers.FIREFOX) {
+			// geckodriver only takes one session at a time.
+			sessionsPerNode = 1;
+		}
+		List<DriverService> started = new ArrayList<DriverService>();
+		List<String> urls = new ArrayList<String>();
+		try {
+			for (int i = 0; i < count; i++) {
+				DriverService service = createService();
+				service.start();
+				started.add(service);
+				urls.add(service.getUrl().toString());
+			}
+		} catch (IOException e) {
+			for (DriverService service : started) {
+				service.stop();
+			}
+			throw new IllegalStateException("It wasn't possible to start the driver servers", e);
+		}
+		final SessionRouter router = new SessionRouter(urls, sessionsPerNode);
+		router.services.addAll(started);
+		Runtime.getRuntime().addShutdownHook(new Thread(router::stop));
+		return router;
+	}
+
+	/**
+	 * Starts listening on localhost.
+	 *
+	 * @param port The port, or 0 for a free one.
+	 * @throws IOException If the port can't be used.
+	 */
+	public void start(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					route(exchange);
+				} catch (RuntimeException e) {
+					error(exchange, 500, "unknown error", e.toString());
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		if (ProjectProperties.ROUTER_IDLE_TIMEOUT_S > 0) {
+			reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "session-router-reaper");
+				thread.setDaemon(true);
+				return thread;
+			});
+			long period = Math.max(1, ProjectProperties.ROUTER_IDLE_TIMEOUT_S / 10);
+			reaper.scheduleWithFixedDelay(this::expireIdleSessions, period, period, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * @return The base URL of the router. I.e: "http://127.0.0.1:4444".
+	 */
+	public String getUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	public synchronized void stop() {
+		if (reaper != null) {
+			reaper.shutdownNow();
+			reaper = null;
+		}
+		if (server != null) {
+			server.stop(0);
+			server = null;
+		}
+		for (DriverService service : services) {
+			if (service.isRunning()) {
+				service.stop();
+			}
+		}
+		services.clear();
+	}
+
+	/**
+	 * @return The metrics of the router in the Prometheus text format.
+	 */
+	public String getMetrics() {
+		StringBuilder metrics = new StringBuilder();
+		long count = commands.get();
+		metrics.append("router_nodes ").append(nodes.size()).append('\n');
+		metrics.append("router_sessions_active ").append(sessions.size()).append('\n');
+		metrics.append("router_sessions_created_total ").append(created.get()).append('\n');
+		metrics.append("router_sessions_expired_total ").append(expired.get()).append('\n');
+		metrics.append("router_sessions_queued ").append(queued.get()).append('\n');
+		metrics.append("router_queue_wait_ms_sum ").append(millis(queueWaitNanos.get())).append('\n');
+		metrics.append("router_queue_wait_ms_max ").append(millis(queueWaitMaxNanos.get())).append('\n');
+		metrics.append("router_commands_total ").append(count).append('\n');
+		metrics.append("router_upstream_latency_ms_sum ").append(millis(upstreamNanos.get())).append('\n');
+		metrics.append("router_proxy_overhead_ms_sum ").append(millis(overheadNanos.get())).append('\n');
+		metrics.append("router_proxy_overhead_ms_max ").append(millis(overheadMaxNanos.get())).append('\n');
+		synchronized (nodes) {
+			for (Node node : nodes) {
+				metrics.append("router_node_sessions{node=\"").append(node.url).append("\"} ").append(node.active)
+						.append('\n');
+			}
+		}
+		return metrics.toString();
+	}
+
+	private void route(HttpExchange exchange) throws IOException {
+		long start = System.nanoTime();
+		String path = exchange.getRequestURI().getPath();
+		if (path.startsWith("/wd/hub")) {
+			path = path.substring("/wd/hub".length());
+		}
+		String method = exchange.getRequestMethod();
+		if ("GET".equals(method) && "/metrics".equals(path)) {
+			send(exchange, 200, "text/plain; version=0.0.4", getMetrics().getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		if ("GET".equals(method) && "/status".equals(path)) {
+			send(exchange, 200, "application/json; charset=utf-8",
+					"{\"value\": {\"ready\": true, \"message\": \"Session router\"}}".getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		byte[] body = read(exchange.getRequestBody());
+
+		if ("POST".equals(method) && "/session".equals(path)) {
+			Node node = acquire();
+			if (node == null) {
+				error(exchange, 500, "session not created", "No node was free after "
+						+ ProjectProperties.ROUTER_QUEUE_TIMEOUT_S + " s in the queue");
+				return;
+			}
+			start = System.nanoTime();
+			Response response;
+			try {
+				response = forward(node, method, path, body);
+			} catch (IOException | RuntimeException e) {
+				release(node);
+				throw e;
+			}
+			String id = response.status == 200 ? sessionId(response.body) : null;
+			if (id == null) {
+				release(node);
+			} else {
+				sessions.put(id, new Session(node));
+				created.incrementAndGet();
+			}
+			reply(exchange, response, start);
+			return;
+		}
+
+		String[] parts = path.split("/");
+		Session session = parts.length > 2 && "session".equals(parts[1]) ? sessions.get(parts[2]) : null;
+		if (session == null) {
+			error(exchange, 404, "invalid session id", "Unknown session: " + path);
+			return;
+		}
+		Response response;
+		session.running.incrementAndGet();
+		try {
+			response = forward(session.node, method, path, body);
+		} finally {
+			session.lastUsed = System.nanoTime();
+			session.running.decrementAndGet();
+		}
+		if ("DELETE".equals(method) && parts.length == 3 && sessions.remove(parts[2], session)) {
+			release(session.node);
+		}
+		reply(exchange, response, start);
+	}
+
+	/**
+	 * Deletes on their nodes the sessions without commands for
+	 * ROUTER_IDLE_TIMEOUT_S and frees their places. A session with a command
+	 * running isn't idle, however long the command takes.
+	 */
+	private void expireIdleSessions() {
+		long limit = System.nanoTime() - TimeUnit.SECONDS.toNanos(ProjectProperties.ROUTER_IDLE_TIMEOUT_S);
+		for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+			Session session = entry.getValue();
+			if (session.running.get() > 0 || session.lastUsed - limit > 0
+					|| !sessions.remove(entry.getKey(), session)) {
+				continue;
+			}
+			expired.incrementAndGet();
+			System.out.println("Deleting the idle session " + entry.getKey() + " of " + session.node.url);
+			try {
+				forward(session.node, "DELETE", "/session/" + entry.getKey(), new byte[0]);
+			} catch (IOException | RuntimeException e) {
+				System.out.println("It wasn't possible to delete the session " + entry.getKey() + ": " + e.getMessage());
+			} finally {
+				release(session.node);
+			}
+		}
+	}
+
+	/**
+	 * Waits for the node with the most free capacity (relative to its size).
+	 */
+	private Node acquire() {
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.SECONDS.toNanos(ProjectProperties.ROUTER_QUEUE_TIMEOUT_S);
+		queued.incrementAndGet();
+		try {
+			synchronized (nodes) {
+				while (true) {
+					Node best = null;
+					for (Node node : nodes) {
+						if (node.active < node.capacity && (best == null
+								|| (double) node.active / node.capacity < (double) best.active / best.capacity)) {
+							best = node;
+						}
+					}
+					if (best != null) {
+						best.active++;
+						return best;
+					}
+					long left = deadline - System.nanoTime();
+					if (left <= 0) {
+						return null;
+					}
+					try {
+						TimeUnit.NANOSECONDS.timedWait(nodes, left);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return null;
+					}
+				}
+			}
+		} finally {
+			queued.decrementAndGet();
+			long waited = System.nanoTime() - start;
+			queueWaitNanos.addAndGet(waited);
+			max(queueWaitMaxNanos, waited);
+		}
+	}
+
+	private void release(Node node) {
+		synchronized (nodes) {
+			node.active--;
+			nodes.notifyAll();
+		}
+	}
+
+	/**
+	 * The status and the body returned by a node, and how long it took.
+	 */
+	private static class Response {
+		private final int status;
+		private final String contentType;
+		private final byte[] body;
+		private final long nanos;
+
+		private Response(int status, String contentType, byte[] body, long nanos) {
+			this.status = status;
+			this.contentType = contentType;
+			this.body = body;
+			this.nanos = nanos;
+		}
+	}
+
+	private Response forward(Node node, String method, String path, byte[] body) throws IOException {
+		long start = System.nanoTime();
+		HttpURLConnection connection = (HttpURLConnection) new URL(node.url + path).openConnection();
+		connection.setRequestMethod(method);
+		connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+		if (body.length > 0 || "POST".equals(method)) {
+			connection.setDoOutput(true);
+			connection.setFixedLengthStreamingMode(body.length);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(body);
+			}
+		}
+		int status = connection.getResponseCode();
+		InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+		byte[] content = in == null ? new byte[0] : read(in);
+		String contentType = connection.getContentType();
+		return new Response(status, contentType == null ? "application/json; charset=utf-8" : contentType, content,
+				System.nanoTime() - start);
+	}
+
+	private void reply(HttpExchange exchange, Response response, long start) throws IOException {
+		send(exchange, response.status, response.contentType, response.body);
+		long overhead = System.nanoTime() - start - response.nanos;
+		commands.incrementAndGet();
+		upstreamNanos.addAndGet(response.nanos);
+		overheadNanos.addAndGet(overhead);
+		max(overheadMaxNanos, overhead);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static String sessionId(byte[] body) {
+		try {
+			Map<String, Object> response = json.toType(new String(body, StandardCharsets.UTF_8), Json.MAP_TYPE);
+			Object value = response.get("value");
+			if (value instanceof Map && ((Map<String, Object>) value).get("sessionId") != null) {
+				return String.valueOf(((Map<String, Object>) value).get("sessionId"));
+			}
+			Object id = response.get("sessionId");
+			return id == null ? null : String.valueOf(id);
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	private static void error(HttpExchange exchange, int status, String error, String message) throws IOException {
+		Map<String, Object> value = new LinkedHashMap<String, Object>();
+		value.put("error", error);
+		value.put("message", message);
+		value.put("stacktrace", "");
+		Map<String, Object> response = new LinkedHashMap<String, Object>();
+		response.put("value", value);
+		send(exchange, status, "application/json; charset=utf-8",
+				json.toJson(response).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void send(HttpExchange exchange, int status, String contentType, byte[] body)
+			throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+		if (body.length > 0) {
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		}
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		try {
+			for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return out.toByteArray();
+	}
+
+	private static DriverService createService() {
+		switch (ProjectProperties.browser) {
+			case CHROME:
+				System.setProperty("webdriver.chrome.driver", "./src/main/resources/drivers/chromedriver.exe");
+				return ChromeDriverService.createDefaultService();
+			case EDGE:
+				System.setProperty("webdriver.edge.driver", "./src/main/resources/drivers/msedgedriver.exe");
+				return EdgeDriverService.createDefaultService();
+			default:
+				System.setProperty("webdriver.gecko.driver", "./src/main/resources/drivers/geckodriver.exe");
+				return GeckoDriverService.createDefaultService();
+		}
+	}
+
+	private static void max(AtomicLong max, long value) {
+		long current;
+		do {
+			current = max.get();
+		} while (value > current && !max.compareAndSet(current, value));
+	}
+
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+	}
+}
@@ -0,0 +1,213 @@
+package core;
+
+import static core.DriverFactory.getDriver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.json.Json;
+
+/**
+ * Keeps the authenticated state of the browser (cookies, localStorage and
+ * sessionStorage) captured after a login, so the next scenarios can start
+ * already logged in instead of going through the login pages again.
+ * <p>
+ * Usage inside the login step:
+ * 
+ * <pre>
+ * SessionStateCache.loginWithCache("admin", () -&gt; loginPage.login("admin", "secret"),
+ * 		() -&gt; utils.isDisplayed(By.id("logout")));
+ * </pre>
+ * 
+ * The states are kept in memory for
+ * {@link ProjectProperties#SESSION_CACHE_TTL_MINUTES}. To reuse them in the
+ * next runs too, set {@link ProjectProperties#SESSION_CACHE_DIR} (empty by
+ * default): the cookies and storages are then written there in plain text. A
+ * state rejected by the application is removed and the UI login runs again.
+ * <p>
+ * With TABS_PER_BROWSER greater than 1 the cache is off and the UI login always
+ * runs: the tabs share the cookies and storage of the browser, so restoring a
+ * state would log out the scenarios of the other tabs.
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class SessionStateCache {
+
+	private static final String READ_STORAGE_SCRIPT = "function copy(storage) {"
+			+ "  var result = {};"
+			+ "  for (var i = 0; i < storage.length; i++) { result[storage.key(i)] = storage.getItem(storage.key(i)); }"
+			+ "  return result;"
+			+ "}"
+			+ "return {url: location.href, origin: location.origin, local: copy(localStorage), session: copy(sessionStorage)};";
+
+	private static final String WRITE_STORAGE_SCRIPT = "localStorage.clear(); sessionStorage.clear();"
+			+ "for (var key in arguments[0]) { localStorage.setItem(key, arguments[0][key]); }"
+			+ "for (var key in arguments[1]) { sessionStorage.setItem(key, arguments[1][key]); }";
+
+	private static final Map<String, Map<String, Object>> memory = new ConcurrentHashMap<String, Map<String, Object>>();
+
+	private static final Json json = new Json();
+
+	private SessionStateCache() {
+	}
+
+	/**
+	 * Restores the cached state of a key or, when there isn't a valid one, runs the
+	 * UI login and caches the resulting state.
+	 * 
+	 * @param key        Identifies the state. I.e: the user name.
+	 * @param uiLogin    The login through the pages.
+	 * @param isLoggedIn Checks if the browser is logged in after the state is
+	 *                   restored.
+	 */
+	public static void loginWithCache(String key, Runnable uiLogin, BooleanSupplier isLoggedIn) {
+		if (ProjectProperties.TABS_PER_BROWSER > 1) {
+			uiLogin.run();
+			return;
+		}
+		if (restore(key)) {
+			if (isLoggedIn.getAsBoolean()) {
+				return;
+			}
+			System.out.println("The cached session state '" + key + "' was rejected, logging in through the UI.");
+			invalidate(key);
+			clearBrowserState();
+		}
+		uiLogin.run();
+		capture(key);
+	}
+
+	/**
+	 * Captures the cookies and the storages of the current page.
+	 * 
+	 * @param key Identifies the state. I.e: the user name.
+	 */
+	@SuppressWarnings("unchecked")
+	public static void capture(String key) {
+		WebDriver driver = getDriver();
+		Map<String, Object> state = new HashMap<String, Object>(
+				(Map<String, Object>) ((JavascriptExecutor) driver).executeScript(READ_STORAGE_SCRIPT));
+		List<Map<String, Object>> cookies = new ArrayList<Map<String, Object>>();
+		for (Cookie cookie : driver.manage().getCookies()) {
+			Map<String, Object> values = new HashMap<String, Object>();
+			values.put("name", cookie.getName());
+			values.put("value", cookie.getValue());
+			values.put("domain", cookie.getDomain());
+			values.put("path", cookie.getPath());
+			values.put("expiry", cookie.getExpiry() == null ? null : cookie.getExpiry().getTime());
+			values.put("secure", cookie.isSecure());
+			values.put("httpOnly", cookie.isHttpOnly());
+			cookies.add(values);
+		}
+		state.put("cookies", cookies);
+		state.put("capturedAt", System.currentTimeMillis());
+		memory.put(key, state);
+		File file = file(key);
+		if (file != null) {
+			try {
+				file.getParentFile().mkdirs();
+				Files.write(file.toPath(), json.toJson(state).getBytes(StandardCharsets.UTF_8));
+			} catch (IOException e) {
+				System.out.println("It wasn't possible to save the session state '" + key + "': " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Loads the cached state of a key into the browser.
+	 * 
+	 * @param key Identifies the state.
+	 * @return True if a valid state was found and loaded, False if there isn't one
+	 *         or the browser is shared by several workers.
+	 */
+	@SuppressWarnings("unchecked")
+	public static boolean restore(String key) {
+		Map<String, Object> state = ProjectProperties.TABS_PER_BROWSER > 1 ? null : get(key);
+		if (state == null) {
+			return false;
+		}
+		WebDriver driver = getDriver();
+		try {
+			// Cookies and storages can only be written on a page of the same origin.
+			driver.navigate().to((String) state.get("origin"));
+			driver.manage().deleteAllCookies();
+			for (Map<String, Object> values : (List<Map<String, Object>>) state.get("cookies")) {
+				Number expiry = (Number) values.get("expiry");
+				driver.manage().addCookie(new Cookie((String) values.get("name"), (String) values.get("value"),
+						(String) values.get("domain"), (String) values.get("path"),
+						expiry == null ? null : new Date(expiry.longValue()), Boolean.TRUE.equals(values.get("secure")),
+						Boolean.TRUE.equals(values.get("httpOnly"))));
+			}
+			((JavascriptExecutor) driver).executeScript(WRITE_STORAGE_SCRIPT, state.get("local"), state.get("session"));
+			driver.navigate().to((String) state.get("url"));
+			DriverFactory.getContext().navigated();
+			return true;
+		} catch (RuntimeException e) {
+			System.out.println("It wasn't possible to restore the session state '" + key + "': " + e.getMessage());
+			invalidate(key);
+			return false;
+		}
+	}
+
+	/**
+	 * Removes the cached state of a key from memory and from disk.
+	 * 
+	 * @param key Identifies the state.
+	 */
+	public static void invalidate(String key) {
+		memory.remove(key);
+		File file = file(key);
+		if (file != null) {
+			file.delete();
+		}
+	}
+
+	private static Map<String, Object> get(String key) {
+		Map<String, Object> state = memory.get(key);
+		File file = file(key);
+		if (state == null && file != null && file.isFile()) {
+			try {
+				state = json.toType(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8),
+						Json.MAP_TYPE);
+				memory.put(key, state);
+			} catch (IOException | RuntimeException e) {
+				System.out.println("It wasn't possible to read the session state '" + key + "': " + e.getMessage());
+			}
+		}
+		if (state == null) {
+			return null;
+		}
+		long age = System.currentTimeMillis() - ((Number) state.get("capturedAt")).longValue();
+		if (age > ProjectProperties.SESSION_CACHE_TTL_MINUTES * 60_000L) {
+			invalidate(key);
+			return null;
+		}
+		return state;
+	}
+
+	private static void clearBrowserState() {
+		WebDriver driver = getDriver();
+		driver.manage().deleteAllCookies();
+		((JavascriptExecutor) driver).executeScript("localStorage.clear(); sessionStorage.clear();");
+	}
+
+	private static File file(String key) {
+		if (ProjectProperties.SESSION_CACHE_DIR == null || ProjectProperties.SESSION_CACHE_DIR.isEmpty()) {
+			return null;
+		}
+		return new File(ProjectProperties.SESSION_CACHE_DIR, key.replaceAll("[^A-Za-z0-9._-]", "_") + ".json");
+	}
+}
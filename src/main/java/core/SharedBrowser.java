@@ -0,0 +1,407 @@
+package core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.WrapsElement;
+import org.openqa.selenium.remote.service.DriverService;
+
+/**
+ * A browser process shared by several worker threads, each one in its own tab.
+ * Enabled when ProjectProperties.TABS_PER_BROWSER is greater than 1.
+ * <p>
+ * Each worker gets a proxy of the driver. Every command sent through it (and
+ * through the elements, alerts, options and so on that it returns) takes the
+ * lock of the browser, switches to the tab of the worker if another worker was
+ * the last one there, restores the frame path of the worker and then runs. The
+ * workers never wait for each other's think time, waits or Java code, only for
+ * the commands themselves.
+ * <p>
+ * The tabs share the cookies and storage of the browser profile: WebDriver 3
+ * has no way to open a tab in an isolated browser context. The scenarios that
+ * need a clean session must not run in this mode, and SessionStateCache and the
+ * memory limit of MemoryWatchdog are turned off in it (restoring a state clears
+ * the cookies of every tab, and the memory is the one of the whole browser).
+ * Quitting the proxy closes only the windows of the worker; the browser is
+ * closed with its last worker.
+ *
+ * @author Bruno Fraga
+ *
+ */
+public class SharedBrowser {
+
+	private static final List<SharedBrowser> browsers = new ArrayList<SharedBrowser>();
+
+	private final ReentrantLock lock = new ReentrantLock(true);
+	private final CountDownLatch started = new CountDownLatch(1);
+	private volatile WebDriver driver;
+	private volatile DriverService service;
+	private volatile RuntimeException failure;
+	private String current;
+	private int tabs;
+	private boolean firstTabFree = true;
+
+	private SharedBrowser() {
+	}
+
+	/**
+	 * Opens a tab for the current thread in a browser with fewer than
+	 * TABS_PER_BROWSER tabs, starting a new browser when all of them are full.
+	 * The browser is started outside the lock of the class, so the workers that
+	 * get a tab of another browser don't wait for it; the ones that get a tab of
+	 * the new browser wait until it's started.
+	 *
+	 * @return The tab.
+	 */
+	public static Tab openTab() {
+		SharedBrowser browser = null;
+		boolean start = false;
+		synchronized (SharedBrowser.class) {
+			for (SharedBrowser candidate : browsers) {
+				if (candidate.tabs < ProjectProperties.TABS_PER_BROWSER) {
+					browser = candidate;
+					break;
+				}
+			}
+			if (browser == null) {
+				browser = new SharedBrowser();
+				browsers.add(browser);
+				start = true;
+			}
+			browser.tabs++;
+		}
+		if (start) {
+			browser.start();
+		} else {
+			browser.awaitStart();
+		}
+
+		browser.lock.lock();
+		try {
+			String handle;
+			if (browser.firstTabFree) {
+				handle = browser.driver.getWindowHandle();
+				browser.firstTabFree = false;
+			} else {
+				Set<String> before = browser.driver.getWindowHandles();
+				((JavascriptExecutor) browser.driver).executeScript("window.open('about:blank', '_blank');");
+				Set<String> opened = new HashSet<String>(browser.driver.getWindowHandles());
+				opened.removeAll(before);
+				if (opened.isEmpty()) {
+					throw new IllegalStateException("The browser did not open a new tab");
+				}
+				handle = opened.iterator().next();
+			}
+			browser.driver.switchTo().window(handle);
+			browser.current = handle;
+			return new Tab(browser, handle);
+		} catch (RuntimeException e) {
+			synchronized (SharedBrowser.class) {
+				browser.tabs--;
+			}
+			throw e;
+		} finally {
+			browser.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return The number of browser processes open in this mode.
+	 */
+	public static synchronized int getBrowserCount() {
+		return browsers.size();
+	}
+
+	/**
+	 * Starts the browser in the calling thread. If it fails, the browser is
+	 * removed and the workers waiting for it fail too.
+	 */
+	private void start() {
+		try {
+			driver = DriverFactory.createDriver();
+			service = DriverFactory.getService();
+		} catch (RuntimeException e) {
+			failure = e;
+			synchronized (SharedBrowser.class) {
+				browsers.remove(this);
+				tabs--;
+			}
+			throw e;
+		} finally {
+			started.countDown();
+		}
+	}
+
+	private void awaitStart() {
+		try {
+			started.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failure = failure == null ? new IllegalStateException("Interrupted while the browser started", e)
+					: failure;
+		}
+		if (driver == null) {
+			synchronized (SharedBrowser.class) {
+				tabs--;
+			}
+			throw new IllegalStateException("The shared browser could not be started", failure);
+		}
+	}
+
+	private void release(Tab tab) {
+		boolean last;
+		synchronized (SharedBrowser.class) {
+			last = --tabs == 0;
+			if (last) {
+				browsers.remove(this);
+			}
+		}
+		lock.lock();
+		try {
+			if (last) {
+				driver.quit();
+				return;
+			}
+			Set<String> open = driver.getWindowHandles();
+			for (String handle : tab.windows) {
+				if (open.contains(handle)) {
+					driver.switchTo().window(handle);
+					driver.close();
+				}
+			}
+			current = null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * The tab (and the windows it opened) of a worker.
+	 */
+	public static class Tab {
+
+		private final SharedBrowser browser;
+		private final Set<String> windows = new LinkedHashSet<String>();
+		private final List<Object> frames = new ArrayList<Object>();
+		private final WebDriver proxy;
+		private String handle;
+		private boolean released;
+
+		private Tab(SharedBrowser browser, String handle) {
+			this.browser = browser;
+			this.handle = handle;
+			windows.add(handle);
+			proxy = (WebDriver) proxy(browser.driver, null);
+		}
+
+		/**
+		 * @return The driver of this tab. Quitting it closes only this tab.
+		 */
+		public WebDriver getDriver() {
+			return proxy;
+		}
+
+		public DriverService getService() {
+			return browser.service;
+		}
+
+		private Object proxy(Object target, Class<?> returnType) {
+			Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+			if (returnType != null && returnType.isInterface()) {
+				interfaces.add(returnType);
+			}
+			for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+				for (Class<?> implemented : type.getInterfaces()) {
+					if (Modifier.isPublic(implemented.getModifiers())) {
+						interfaces.add(implemented);
+					}
+				}
+			}
+			if (target instanceof WebElement) {
+				interfaces.add(WrapsElement.class);
+			}
+			return Proxy.newProxyInstance(SharedBrowser.class.getClassLoader(), interfaces.toArray(new Class<?>[0]),
+					new Target(target));
+		}
+
+		/**
+		 * Runs one command in this tab.
+		 */
+		private Object call(Object target, Method method, Object[] args) throws Throwable {
+			if (target == browser.driver && "quit".equals(method.getName())) {
+				if (!released) {
+					released = true;
+					browser.release(this);
+				}
+				return null;
+			}
+			if (released) {
+				throw new IllegalStateException("The tab of this worker was already closed");
+			}
+			browser.lock.lock();
+			try {
+				activate();
+				Object result;
+				try {
+					result = method.invoke(target, unwrap(args));
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+				track(target, method, args);
+				return wrap(result, method.getReturnType());
+			} finally {
+				browser.lock.unlock();
+			}
+		}
+
+		/**
+		 * Switches the browser to this tab, and to the frame the worker was in, when
+		 * another worker was the last one to send a command.
+		 */
+		private void activate() {
+			if (handle == null || handle.equals(browser.current)) {
+				return;
+			}
+			browser.driver.switchTo().window(handle);
+			browser.current = handle;
+			for (Object frame : frames) {
+				if (frame instanceof WebElement) {
+					browser.driver.switchTo().frame((WebElement) frame);
+				} else if (frame instanceof Number) {
+					browser.driver.switchTo().frame(((Number) frame).intValue());
+				} else {
+					browser.driver.switchTo().frame((String) frame);
+				}
+			}
+		}
+
+		/**
+		 * Keeps the window and the frame path of the worker, to restore them in
+		 * {@link #activate()}.
+		 */
+		private void track(Object target, Method method, Object[] args) {
+			String name = method.getName();
+			if (target instanceof WebDriver.TargetLocator) {
+				if ("window".equals(name)) {
+					handle = (String) args[0];
+					windows.add(handle);
+					browser.current = handle;
+					frames.clear();
+				} else if ("frame".equals(name)) {
+					frames.add(unwrap(args)[0]);
+				} else if ("parentFrame".equals(name) && !frames.isEmpty()) {
+					frames.remove(frames.size() - 1);
+				} else if ("defaultContent".equals(name)) {
+					frames.clear();
+				}
+			} else if (target == browser.driver && "close".equals(name)) {
+				windows.remove(handle);
+				handle = null;
+				browser.current = null;
+				frames.clear();
+			}
+		}
+
+		private Object wrap(Object result, Class<?> returnType) {
+			if (result == null) {
+				return null;
+			}
+			if (result == browser.driver) {
+				return proxy;
+			}
+			if (result instanceof WebElement) {
+				return proxy(result, WebElement.class);
+			}
+			if (result instanceof List) {
+				List<Object> list = new ArrayList<Object>();
+				for (Object item : (List<?>) result) {
+					list.add(wrap(item, null));
+				}
+				return list;
+			}
+			if (result instanceof Map) {
+				Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+				for (Map.Entry<?, ?> entry : ((Map<?, ?>) result).entrySet()) {
+					map.put(entry.getKey(), wrap(entry.getValue(), null));
+				}
+				return map;
+			}
+			if (returnType != null && returnType.isInterface()
+					&& returnType.getName().startsWith("org.openqa.selenium.")) {
+				// Options, Navigation, TargetLocator, Alert, Window, Timeouts, Logs...
+				return proxy(result, returnType);
+			}
+			return result;
+		}
+
+		private Object[] unwrap(Object[] args) {
+			if (args == null) {
+				return null;
+			}
+			Object[] unwrapped = new Object[args.length];
+			for (int i = 0; i < args.length; i++) {
+				unwrapped[i] = unwrap(args[i]);
+			}
+			return unwrapped;
+		}
+
+		private Object unwrap(Object arg) {
+			if (arg != null && Proxy.isProxyClass(arg.getClass())
+					&& Proxy.getInvocationHandler(arg) instanceof Target) {
+				return ((Target) Proxy.getInvocationHandler(arg)).target;
+			}
+			if (arg instanceof Object[]) {
+				return unwrap((Object[]) arg);
+			}
+			if (arg instanceof List) {
+				List<Object> list = new ArrayList<Object>();
+				for (Object item : (List<?>) arg) {
+					list.add(unwrap(item));
+				}
+				return list;
+			}
+			return arg;
+		}
+
+		/**
+		 * The handler of one proxy: the driver or an object returned by it.
+		 */
+		private class Target implements InvocationHandler {
+
+			private final Object target;
+
+			private Target(Object target) {
+				this.target = target;
+			}
+
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getDeclaringClass() == Object.class) {
+					if ("equals".equals(method.getName())) {
+						return target.equals(unwrap(args[0]));
+					}
+					return method.invoke(target, args);
+				}
+				if (method.getDeclaringClass() == WrapsElement.class) {
+					return target;
+				}
+				return call(target, method, args);
+			}
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package core;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Records, while a scenario runs, which page objects and which Utils methods it
+ * uses. Nothing is recorded (and nothing is spent) until a scenario is started
+ * with {@link #start(String)}, which is done by the runner.ImpactRecorder
+ * plugin.
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class UsageRecorder {
+
+	private static final String PAGE_OBJECTS = "pageObject.";
+
+	private static final String UTILS = "util.Utils";
+
+	private static volatile boolean enabled;
+
+	private static final ThreadLocal<Usage> current = new ThreadLocal<Usage>();
+
+	/**
+	 * What a scenario used.
+	 */
+	public static class Usage {
+		private final String scenario;
+		private final Set<String> pages = new TreeSet<String>();
+		private final Set<String> utils = new TreeSet<String>();
+
+		private Usage(String scenario) {
+			this.scenario = scenario;
+		}
+
+		public String getScenario() {
+			return scenario;
+		}
+
+		public Set<String> getPages() {
+			return pages;
+		}
+
+		public Set<String> getUtils() {
+			return utils;
+		}
+	}
+
+	private UsageRecorder() {
+	}
+
+	/**
+	 * Starts recording a scenario in the current thread.
+	 * 
+	 * @param scenario Scenario id.
+	 */
+	public static void start(String scenario) {
+		enabled = true;
+		current.set(new Usage(scenario));
+	}
+
+	/**
+	 * Stops recording in the current thread.
+	 * 
+	 * @return What the scenario used, or null if nothing was being recorded.
+	 */
+	public static Usage stop() {
+		Usage usage = current.get();
+		current.remove();
+		return usage;
+	}
+
+	/**
+	 * Records a page object class and its page object superclasses.
+	 * 
+	 * @param page Class of the page object (or of the steps class that extends it).
+	 */
+	public static void recordPage(Class<?> page) {
+		Usage usage = enabled ? current.get() : null;
+		if (usage == null) {
+			return;
+		}
+		for (Class<?> type = page; type != null; type = type.getSuperclass()) {
+			if (type.getName().startsWith(PAGE_OBJECTS)) {
+				usage.pages.add(type.getName());
+			}
+		}
+	}
+
+	/**
+	 * Records every Utils method and page object on the stack. Called at the
+	 * start of each public Utils method, so the stack is read once per call of
+	 * Utils, and only while a scenario is recorded (otherwise this costs a
+	 * volatile read). The private helpers run after the entry and aren't on the
+	 * stack yet: runner.ImpactSelector maps a changed helper to the public
+	 * methods that call it.
+	 */
+	public static void recordCaller() {
+		Usage usage = enabled ? current.get() : null;
+		if (usage == null) {
+			return;
+		}
+		for (StackTraceElement frame : new Throwable().getStackTrace()) {
+			if (frame.getClassName().equals(UTILS)) {
+				usage.utils.add(frame.getMethodName());
+			} else if (frame.getClassName().startsWith(PAGE_OBJECTS)) {
+				usage.pages.add(frame.getClassName());
+			}
+		}
+	}
+}
@@ -0,0 +1,8 @@
+@BrunoFraga
+Feature: Example of a load test with local pages
+  I want to open a page served by the fixture server
+
+  @Load
+  Scenario: Valido acesso a pagina local
+    Given que acesso a pagina local de exemplo
+    Then valido se a pagina acessada e a pagina local de exemplo
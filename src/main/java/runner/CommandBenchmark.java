@@ -0,0 +1,276 @@
+package runner;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.remote.CommandExecutor;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import core.PooledCommandExecutor;
+
+/**
+ * Measures the time the client spends on each WebDriver command, against a
+ * fake driver server in this JVM that answers at once, so the browser isn't
+ * part of the measure. Three modes run the same commands (alternately a
+ * getTitle and a findElement):
+ * <ul>
+ * <li>raw-http: the HTTP request alone, on a keep-alive connection, as the
+ * floor;</li>
+ * <li>selenium-default: RemoteWebDriver with the default executor (the
+ * shared pool of Selenium, emptied when a session quits);</li>
+ * <li>pooled: RemoteWebDriver with {@link PooledCommandExecutor}.</li>
+ * </ul>
+ * Each thread opens the sessions one after the other, like a worker running
+ * scenarios. The overhead is the mean time of a command minus the mean time of
+ * raw-http. The results are printed and appended to
+ * target/command-benchmark.csv.
+ * <p>
+ * Usage: CommandBenchmark [--commands 5000] [--sessions 20] [--threads 1]
+ *
+ * @author Bruno Fraga
+ *
+ */
+public class CommandBenchmark {
+
+	private static final String FILE = "target/command-benchmark.csv";
+
+	private static final String HEADER = "timestamp,mode,threads,sessions,commands,session_ms,mean_us,p50_us,p99_us,overhead_us";
+
+	private static final AtomicInteger ids = new AtomicInteger();
+
+	private static String url;
+
+	private CommandBenchmark() {
+	}
+
+	/**
+	 * Runs the commands of one session.
+	 */
+	private interface Mode {
+		/**
+		 * @return The time of the session setup (ns).
+		 */
+		long run(long[] times, int from, int to) throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int commands = 5000;
+		int sessions = 20;
+		int threads = 1;
+		for (int i = 0; i < args.length - 1; i++) {
+			if ("--commands".equals(args[i])) {
+				commands = Integer.parseInt(args[++i]);
+			} else if ("--sessions".equals(args[i])) {
+				sessions = Integer.parseInt(args[++i]);
+			} else if ("--threads".equals(args[i])) {
+				threads = Integer.parseInt(args[++i]);
+			}
+		}
+		HttpServer server = startFakeDriver(threads);
+		url = "http://127.0.0.1:" + server.getAddress().getPort();
+
+		// The first run of each mode only warms up the JIT.
+		double floor = 0;
+		for (boolean warmUp : new boolean[] { true, false }) {
+			floor = measure("raw-http", threads, sessions, commands, warmUp, 0, new Mode() {
+				@Override
+				public long run(long[] times, int from, int to) throws IOException {
+					for (int i = from; i < to; i++) {
+						long start = System.nanoTime();
+						request(i % 2 == 0 ? "GET" : "POST",
+								i % 2 == 0 ? "/session/raw/title" : "/session/raw/element");
+						times[i] = System.nanoTime() - start;
+					}
+					return 0;
+				}
+			});
+			measure("selenium-default", threads, sessions, commands, warmUp, floor, new Mode() {
+				@Override
+				public long run(long[] times, int from, int to) throws IOException {
+					return session(new HttpCommandExecutor(new URL(url)), times, from, to);
+				}
+			});
+			measure("pooled", threads, sessions, commands, warmUp, floor, new Mode() {
+				@Override
+				public long run(long[] times, int from, int to) throws IOException {
+					return session(new PooledCommandExecutor(new URL(url)), times, from, to);
+				}
+			});
+		}
+		System.out.println(PooledCommandExecutor.getStatistics());
+		server.stop(0);
+		System.exit(0);
+	}
+
+	/**
+	 * Runs the sessions of each thread and prints the latency of the commands.
+	 *
+	 * @return The mean time of a command (us).
+	 */
+	private static double measure(String mode, int threads, final int sessions, final int commands, boolean warmUp,
+			double floor, final Mode run) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+		for (int t = 0; t < threads; t++) {
+			results.add(pool.submit(() -> {
+				long[] times = new long[commands];
+				long setup = 0;
+				for (int s = 0; s < sessions; s++) {
+					setup += run.run(times, s * commands / sessions, (s + 1) * commands / sessions);
+				}
+				long[] result = Arrays.copyOf(times, commands + 1);
+				result[commands] = setup;
+				return result;
+			}));
+		}
+		long[] all = new long[commands * threads];
+		long setup = 0;
+		for (int t = 0; t < threads; t++) {
+			long[] result = results.get(t).get();
+			System.arraycopy(result, 0, all, t * commands, commands);
+			setup += result[commands];
+		}
+		pool.shutdown();
+		if (warmUp) {
+			return 0;
+		}
+
+		Arrays.sort(all);
+		long total = 0;
+		for (long time : all) {
+			total += time;
+		}
+		double mean = total / 1e3 / all.length;
+		double p50 = all[all.length / 2] / 1e3;
+		double p99 = all[(int) (all.length * 0.99)] / 1e3;
+		double sessionMs = setup / 1e6 / (sessions * threads);
+		double overhead = floor == 0 ? 0 : mean - floor;
+		System.out.println(String.format(Locale.ROOT,
+				"%s: %d command(s), mean %.1f us, p50 %.1f us, p99 %.1f us, overhead %.1f us, session %.2f ms", mode,
+				all.length, mean, p50, p99, overhead, sessionMs));
+		write(System.currentTimeMillis() + "," + mode + "," + threads + "," + sessions + "," + all.length + ","
+				+ String.format(Locale.ROOT, "%.3f,%.1f,%.1f,%.1f,%.1f", sessionMs, mean, p50, p99, overhead));
+		return mean;
+	}
+
+	private static long session(CommandExecutor executor, long[] times, int from, int to) {
+		long start = System.nanoTime();
+		WebDriver driver = new RemoteWebDriver(executor, new ChromeOptions());
+		long setup = System.nanoTime() - start;
+		try {
+			for (int i = from; i < to; i++) {
+				start = System.nanoTime();
+				if (i % 2 == 0) {
+					driver.getTitle();
+				} else {
+					driver.findElement(By.id("field"));
+				}
+				times[i] = System.nanoTime() - start;
+			}
+		} finally {
+			driver.quit();
+		}
+		return setup;
+	}
+
+	private static void request(String method, String path) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url + path).openConnection();
+		connection.setRequestMethod(method);
+		if ("POST".equals(method)) {
+			byte[] body = "{\"using\":\"css selector\",\"value\":\"#field\"}".getBytes(StandardCharsets.UTF_8);
+			connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+			connection.setDoOutput(true);
+			connection.setFixedLengthStreamingMode(body.length);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(body);
+			}
+		}
+		try (InputStream in = connection.getInputStream()) {
+			drain(in);
+		}
+	}
+
+	/**
+	 * Starts a driver server that answers every command at once, as a W3C
+	 * driver would.
+	 */
+	private static HttpServer startFakeDriver(int threads) throws IOException {
+		// Without it the JDK server waits for the delayed ACK between the headers
+		// and the body of each response, which would hide everything else.
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", (HttpExchange exchange) -> {
+			try {
+				drain(exchange.getRequestBody());
+				String path = exchange.getRequestURI().getPath();
+				String value;
+				if ("/session".equals(path)) {
+					value = "{\"sessionId\":\"fake-" + ids.incrementAndGet()
+							+ "\",\"capabilities\":{\"browserName\":\"chrome\"}}";
+				} else if (path.endsWith("/title")) {
+					value = "\"Fake page\"";
+				} else if (path.endsWith("/element")) {
+					value = "{\"element-6066-11e4-a52e-4f735466cecf\":\"element-1\"}";
+				} else {
+					value = "null";
+				}
+				byte[] body = ("{\"value\":" + value + "}").getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			} finally {
+				exchange.close();
+			}
+		});
+		server.setExecutor(Executors.newFixedThreadPool(Math.max(2, threads * 2)));
+		server.start();
+		return server;
+	}
+
+	private static void drain(InputStream in) throws IOException {
+		byte[] buffer = new byte[1024];
+		while (in.read(buffer) != -1) {
+			// Only consumed, so the connection can be reused.
+		}
+		in.close();
+	}
+
+	private static void write(String line) {
+		File file = new File(FILE);
+		boolean header = !file.exists();
+		file.getParentFile().mkdirs();
+		try (PrintWriter writer = new PrintWriter(new FileWriter(file, true))) {
+			if (header) {
+				writer.println(HEADER);
+			}
+			writer.println(line);
+		} catch (IOException e) {
+			System.out.println("It wasn't possible to write the benchmark: " + e.getMessage());
+		}
+	}
+}
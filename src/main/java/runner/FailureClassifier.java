@@ -0,0 +1,71 @@
+package runner;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Classifies the error of a failed scenario. Utils reports driver errors
+ * through Assert.fail() with the original message inside, so the message is
+ * searched for driver and infrastructure errors before being taken as an
+ * assertion failure.
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class FailureClassifier {
+
+	/**
+	 * The kinds of failure.
+	 */
+	public enum Type {
+		/** Browser, driver or network problem. The scenario may pass in a new session. */
+		INFRASTRUCTURE,
+		/** The application did not behave as expected. */
+		ASSERTION,
+		/** Any other error (I.e: a bug in the steps). */
+		OTHER
+	}
+
+	/**
+	 * Errors of the browser session itself. The timeouts of the waits and scripts
+	 * and the windows closed by the application (TimeoutException,
+	 * ScriptTimeoutException, NoSuchWindowException) usually come from the
+	 * application, so they aren't here; only the timeout of the driver talking to
+	 * the renderer is.
+	 */
+	private static final List<String> INFRASTRUCTURE_ERRORS = Arrays.asList("NoSuchSessionException",
+			"SessionNotCreatedException", "UnreachableBrowserException", "session deleted because of page crash",
+			"Timed out receiving message from renderer", "chrome not reachable", "disconnected: not connected to DevTools",
+			"invalid session id", "Session ID is null", "Tried to run command without establishing a connection",
+			"Failed to decode response from marionette", "Connection refused", "ConnectException",
+			"SocketTimeoutException", "java.net.SocketException", "Could not start a new session",
+			"Error communicating with the remote browser", "Timed out waiting for driver server to start");
+
+	private static final List<String> ASSERTION_ERRORS = Arrays.asList("AssertionError", "ComparisonFailure",
+			"AssertionFailedError");
+
+	private FailureClassifier() {
+	}
+
+	/**
+	 * @param errorMessage The error (message and stack trace) of the failed step or
+	 *                     hook.
+	 * @return The kind of the failure.
+	 */
+	public static Type classify(String errorMessage) {
+		if (errorMessage == null) {
+			return Type.OTHER;
+		}
+		for (String error : INFRASTRUCTURE_ERRORS) {
+			if (errorMessage.contains(error)) {
+				return Type.INFRASTRUCTURE;
+			}
+		}
+		for (String error : ASSERTION_ERRORS) {
+			if (errorMessage.contains(error)) {
+				return Type.ASSERTION;
+			}
+		}
+		return Type.OTHER;
+	}
+}
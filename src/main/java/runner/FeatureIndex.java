@@ -0,0 +1,352 @@
+package runner;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openqa.selenium.json.Json;
+
+import core.ProjectProperties;
+import cucumber.runtime.io.MultiLoader;
+import cucumber.runtime.io.ResourceLoader;
+import cucumber.runtime.io.ResourceLoaderClassFinder;
+import cucumber.runtime.model.CucumberFeature;
+import cucumber.runtime.model.FeatureLoader;
+import io.cucumber.core.model.GluePath;
+
+/**
+ * Index of the feature files and of the glue, written by the process-classes
+ * phase of the build (see pom.xml) or by running this class. It keeps the
+ * scenarios of every feature file, so {@link ScenarioCatalog} doesn't parse
+ * every feature file again to list the scenarios of each run, and the classes
+ * of the glue package that have step definitions or hooks, so
+ * {@link ScenarioExecutor} gives Cucumber only those classes instead of
+ * scanning the whole package for each scenario.
+ * <p>
+ * The parsed features (the Gherkin AST and the pickles) can't be written as
+ * JSON and read back by Cucumber, so they are kept in memory instead: each
+ * feature file is parsed once per JVM and handed to Cucumber through
+ * {@link #features(ResourceLoader, List)} for every scenario of that file.
+ * <p>
+ * The index keeps the size and the modification time of every feature file
+ * and of every class file of the glue. When any of them changes, or a file is
+ * added or removed, that part of the index is stale and the scenarios are
+ * listed, or the glue scanned, as if there was no index. The index file is
+ * read again when it's rewritten, and a feature file is parsed again when it
+ * changes.
+ * <p>
+ * Usage: FeatureIndex [--features dir]
+ *
+ * @author Bruno Fraga
+ *
+ */
+public class FeatureIndex {
+
+	private static final Json json = new Json();
+
+	private static Map<String, Object> loaded;
+
+	private static List<Object> loadedStamp;
+
+	private static final Map<URI, ParsedFeature> parsed = new ConcurrentHashMap<URI, ParsedFeature>();
+
+	private FeatureIndex() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		String features = ScenarioCatalog.FEATURES;
+		for (int i = 0; i < args.length; i++) {
+			if ("--features".equals(args[i]) && i + 1 < args.length) {
+				features = args[++i];
+			}
+		}
+		long start = System.nanoTime();
+		Map<String, Object> index = build(features);
+		File file = new File(ProjectProperties.FEATURE_INDEX_FILE);
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		Files.write(file.toPath(), json.toJson(index).getBytes(StandardCharsets.UTF_8));
+		System.out.println("Indexed " + ((Map<?, ?>) index.get("features")).size() + " feature file(s) and "
+				+ ((List<?>) ((Map<?, ?>) index.get("glue")).get("classes")).size() + " glue class(es) in "
+				+ (System.nanoTime() - start) / 1000000 + " ms: " + file.getPath());
+	}
+
+	/**
+	 * Parses the feature files and scans the glue of {@link ScenarioExecutor}.
+	 *
+	 * @param featuresDir Directory with the feature files.
+	 * @return The index, ready to be written as JSON.
+	 * @throws IOException If a feature file can't be read.
+	 */
+	public static Map<String, Object> build(String featuresDir) throws IOException {
+		Map<String, Object> features = new TreeMap<String, Object>();
+		for (File feature : ScenarioCatalog.featureFiles(new File(featuresDir))) {
+			List<Map<String, Object>> scenarios = new ArrayList<Map<String, Object>>();
+			for (ScenarioRef ref : ScenarioCatalog.parse(feature)) {
+				Map<String, Object> scenario = new LinkedHashMap<String, Object>();
+				scenario.put("line", ref.getLine());
+				scenario.put("name", ref.getName());
+				scenario.put("tags", ref.getTags());
+				scenarios.add(scenario);
+			}
+			Map<String, Object> entry = new LinkedHashMap<String, Object>();
+			entry.put("stamp", stamp(feature));
+			entry.put("scenarios", scenarios);
+			features.put(feature.getPath().replace(File.separatorChar, '/'), entry);
+		}
+
+		Map<String, Object> index = new LinkedHashMap<String, Object>();
+		index.put("featuresDir", featuresDir);
+		index.put("features", features);
+		index.put("glue", glue(Thread.currentThread().getContextClassLoader()));
+		return index;
+	}
+
+	/**
+	 * Lists the classes of the glue package that Cucumber would use: the ones
+	 * with a step definition or hook method, and the ones implementing a Cucumber
+	 * interface (I.e: TypeRegistryConfigurer). The classes are loaded but not
+	 * initialized.
+	 */
+	private static Map<String, Object> glue(ClassLoader classLoader) {
+		List<String> classes = new ArrayList<String>();
+		for (Class<?> type : new ResourceLoaderClassFinder(new MultiLoader(classLoader), classLoader)
+				.getDescendants(Object.class, GluePath.parse(ScenarioExecutor.GLUE))) {
+			if (isGlue(type)) {
+				classes.add(type.getName());
+			}
+		}
+		Collections.sort(classes);
+		Map<String, Object> glue = new LinkedHashMap<String, Object>();
+		glue.put("package", ScenarioExecutor.GLUE);
+		glue.put("classes", classes);
+		glue.put("stamps", glueStamps(classLoader));
+		return glue;
+	}
+
+	private static boolean isGlue(Class<?> type) {
+		for (Class<?> implemented : type.getInterfaces()) {
+			if (implemented.getName().startsWith("cucumber.api.")
+					|| implemented.getName().startsWith("io.cucumber.")) {
+				return true;
+			}
+		}
+		for (Method method : type.getMethods()) {
+			for (Annotation annotation : method.getAnnotations()) {
+				String name = annotation.annotationType().getName();
+				if (name.startsWith("io.cucumber.java.") || name.startsWith("cucumber.api.java.")) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return The glue classes from the index, or null when there's no index, it
+	 *         was written for another glue package or a class file of the glue
+	 *         changed since.
+	 */
+	@SuppressWarnings("unchecked")
+	static List<String> glueClasses(ClassLoader classLoader) {
+		Map<String, Object> index = load();
+		Map<String, Object> glue = index == null ? null : (Map<String, Object>) index.get("glue");
+		if (glue == null || !ScenarioExecutor.GLUE.equals(glue.get("package"))) {
+			return null;
+		}
+		Map<String, Object> stamps = glueStamps(classLoader);
+		Map<String, Object> indexed = (Map<String, Object>) glue.get("stamps");
+		if (stamps != null || indexed != null) {
+			if (stamps == null || indexed == null || stamps.size() != indexed.size()) {
+				return null;
+			}
+			for (Map.Entry<String, Object> stamp : stamps.entrySet()) {
+				if (!sameStamp((List<Object>) stamp.getValue(), (List<Object>) indexed.get(stamp.getKey()))) {
+					return null;
+				}
+			}
+		}
+		return (List<String>) glue.get("classes");
+	}
+
+	/**
+	 * @return The stamp of every class file of the glue package, or null when the
+	 *         package isn't a directory (I.e: inside a jar), which is then trusted
+	 *         as it was indexed.
+	 */
+	private static Map<String, Object> glueStamps(ClassLoader classLoader) {
+		URL url = classLoader.getResource(ScenarioExecutor.GLUE.replace('.', '/'));
+		if (url == null || !"file".equals(url.getProtocol())) {
+			return null;
+		}
+		File dir;
+		try {
+			dir = new File(url.toURI());
+		} catch (URISyntaxException e) {
+			return null;
+		}
+		Map<String, Object> stamps = new TreeMap<String, Object>();
+		addClassStamps(dir, "", stamps);
+		return stamps;
+	}
+
+	private static void addClassStamps(File dir, String prefix, Map<String, Object> stamps) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				addClassStamps(file, prefix + file.getName() + "/", stamps);
+			} else if (file.getName().endsWith(".class")) {
+				stamps.put(prefix + file.getName(), stamp(file));
+			}
+		}
+	}
+
+	/**
+	 * Loads the features of the Cucumber feature paths with Cucumber's own
+	 * loader, so the URIs of the features and of the pickles are the ones its
+	 * line filters expect. A path that is a feature file is parsed once and kept
+	 * until the file changes; other paths (directories, classpath: paths) are
+	 * loaded every time.
+	 *
+	 * @param resourceLoader The resource loader of the Cucumber run.
+	 * @param paths          The feature paths of the Cucumber run.
+	 * @return The features, to be given to Cucumber as its FeatureSupplier.
+	 */
+	static List<CucumberFeature> features(ResourceLoader resourceLoader, List<URI> paths) {
+		List<CucumberFeature> features = new ArrayList<CucumberFeature>();
+		for (URI path : paths) {
+			File file = "file".equals(path.getScheme()) ? new File(path.getSchemeSpecificPart()) : null;
+			if (file == null || !file.isFile()) {
+				features.addAll(new FeatureLoader(resourceLoader).load(Collections.singletonList(path)));
+				continue;
+			}
+			List<Object> stamp = stamp(file);
+			ParsedFeature feature = parsed.get(path);
+			if (feature == null || !sameStamp(stamp, feature.stamp)) {
+				feature = new ParsedFeature(stamp,
+						new FeatureLoader(resourceLoader).load(Collections.singletonList(path)));
+				parsed.put(path, feature);
+			}
+			features.addAll(feature.features);
+		}
+		return features;
+	}
+
+	/**
+	 * Reads the scenarios from the index written by {@link #main(String[])}.
+	 *
+	 * @param featuresDir Directory with the feature files.
+	 * @return The scenarios ordered by file and line, or null when there's no
+	 *         index for this directory or it's stale.
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<ScenarioRef> scenarios(String featuresDir) {
+		Map<String, Object> index = load();
+		if (index == null || !featuresDir.equals(index.get("featuresDir")) || !isFresh(index)) {
+			return null;
+		}
+		List<ScenarioRef> scenarios = new ArrayList<ScenarioRef>();
+		Map<String, Map<String, Object>> features = (Map<String, Map<String, Object>>) index.get("features");
+		for (Map.Entry<String, Map<String, Object>> feature : new TreeMap<String, Map<String, Object>>(features)
+				.entrySet()) {
+			for (Map<String, Object> scenario : (List<Map<String, Object>>) feature.getValue().get("scenarios")) {
+				scenarios.add(new ScenarioRef(feature.getKey(), ((Number) scenario.get("line")).intValue(),
+						(String) scenario.get("name"), (List<String>) scenario.get("tags")));
+			}
+		}
+		return scenarios;
+	}
+
+	/**
+	 * @return The index, read again when the file changed since the last read,
+	 *         or null if there's none.
+	 */
+	private static synchronized Map<String, Object> load() {
+		File file = new File(ProjectProperties.FEATURE_INDEX_FILE);
+		if (!file.isFile()) {
+			loaded = null;
+			return null;
+		}
+		List<Object> stamp = stamp(file);
+		if (loaded == null || !sameStamp(stamp, loadedStamp)) {
+			try {
+				loaded = json.toType(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8),
+						Json.MAP_TYPE);
+				loadedStamp = stamp;
+			} catch (IOException | RuntimeException e) {
+				System.out.println("It wasn't possible to read the feature index: " + e.getMessage());
+				loaded = null;
+				return null;
+			}
+		}
+		return loaded;
+	}
+
+	/**
+	 * Only compares sizes and modification times, so the check costs a directory
+	 * listing and doesn't read any file.
+	 */
+	@SuppressWarnings("unchecked")
+	private static boolean isFresh(Map<String, Object> index) {
+		Map<String, Object> features = (Map<String, Object>) index.get("features");
+		List<File> files = ScenarioCatalog.featureFiles(new File((String) index.get("featuresDir")));
+		if (files.size() != features.size()) {
+			return false;
+		}
+		for (File feature : files) {
+			Map<String, Object> entry = (Map<String, Object>) features
+					.get(feature.getPath().replace(File.separatorChar, '/'));
+			if (entry == null || !sameStamp(stamp(feature), (List<Object>) entry.get("stamp"))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static List<Object> stamp(File file) {
+		List<Object> stamp = new ArrayList<Object>();
+		stamp.add(file.length());
+		stamp.add(file.lastModified());
+		return stamp;
+	}
+
+	private static boolean sameStamp(List<Object> current, List<Object> indexed) {
+		if (indexed == null || indexed.size() != current.size()) {
+			return false;
+		}
+		for (int i = 0; i < current.size(); i++) {
+			if (((Number) current.get(i)).longValue() != ((Number) indexed.get(i)).longValue()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static class ParsedFeature {
+
+		private final List<Object> stamp;
+		private final List<CucumberFeature> features;
+
+		private ParsedFeature(List<Object> stamp, List<CucumberFeature> features) {
+			this.stamp = stamp;
+			this.features = features;
+		}
+	}
+}
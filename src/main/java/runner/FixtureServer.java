@@ -0,0 +1,118 @@
+package runner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import core.ProjectProperties;
+
+/**
+ * A small HTTP server that serves the static files of a directory on
+ * localhost. Used to run the scenarios (I.e: with {@link LoadRunner}) against
+ * local pages instead of real environments. The pages of this project are in
+ * {@link #FIXTURES}.
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class FixtureServer {
+
+	/**
+	 * Directory of the fixture pages of this project.
+	 */
+	public static final String FIXTURES = "src/main/resources/fixtures";
+
+	private static FixtureServer fixtures;
+
+	private final HttpServer server;
+
+	private FixtureServer(HttpServer server) {
+		this.server = server;
+	}
+
+	/**
+	 * Starts the server on a free port.
+	 * 
+	 * @param root Directory with the files to serve.
+	 * @return The running server.
+	 * @throws IOException If the server can't be started.
+	 */
+	public static FixtureServer start(final File root) throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				String path = exchange.getRequestURI().getPath();
+				File file = new File(root, path.endsWith("/") ? path + "index.html" : path).getCanonicalFile();
+				if (!file.getPath().startsWith(root.getCanonicalPath() + File.separator) || !file.isFile()) {
+					exchange.sendResponseHeaders(404, -1);
+					exchange.close();
+					return;
+				}
+				byte[] content = Files.readAllBytes(file.toPath());
+				exchange.getResponseHeaders().set("Content-Type", contentType(file.getName()));
+				exchange.sendResponseHeaders(200, content.length);
+				try (OutputStream body = exchange.getResponseBody()) {
+					body.write(content);
+				}
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		return new FixtureServer(server);
+	}
+
+	/**
+	 * Makes ProjectProperties.BASE_URL point to the fixture pages. When it's
+	 * empty (I.e: the scenario runs outside LoadRunner --fixture), a server of
+	 * {@link #FIXTURES} is started on the first call and stopped when the JVM
+	 * exits.
+	 * 
+	 * @throws IOException If the server can't be started.
+	 */
+	public static synchronized void useFixtures() throws IOException {
+		if (!ProjectProperties.BASE_URL.isEmpty()) {
+			return;
+		}
+		if (fixtures == null) {
+			final FixtureServer server = start(new File(FIXTURES));
+			Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+			fixtures = server;
+		}
+		ProjectProperties.BASE_URL = fixtures.getUrl();
+	}
+
+	/**
+	 * @return The base URL of the server, without the trailing slash. I.e:
+	 *         "http://127.0.0.1:41234".
+	 */
+	public String getUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	public void stop() {
+		server.stop(0);
+	}
+
+	private static String contentType(String name) {
+		if (name.endsWith(".html") || name.endsWith(".htm")) {
+			return "text/html; charset=utf-8";
+		} else if (name.endsWith(".js")) {
+			return "application/javascript";
+		} else if (name.endsWith(".css")) {
+			return "text/css";
+		} else if (name.endsWith(".json")) {
+			return "application/json";
+		} else if (name.endsWith(".png")) {
+			return "image/png";
+		}
+		return "application/octet-stream";
+	}
+}
@@ -0,0 +1,141 @@
+package runner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.openqa.selenium.json.Json;
+
+import core.ProjectProperties;
+import core.UsageRecorder;
+import cucumber.api.event.ConcurrentEventListener;
+import cucumber.api.event.EventHandler;
+import cucumber.api.event.EventPublisher;
+import cucumber.api.event.TestCaseFinished;
+import cucumber.api.event.TestCaseStarted;
+import cucumber.api.event.TestRunFinished;
+import cucumber.api.event.TestStepFinished;
+
+/**
+ * Cucumber plugin that builds the change-impact index: for each scenario, the
+ * step definitions and hooks it ran, the page objects and the Utils methods it
+ * used. The index is kept in {@link ProjectProperties#IMPACT_INDEX_FILE} and
+ * each run updates only the scenarios it executed. It's read by
+ * {@link ImpactSelector}.
+ * <p>
+ * Usage: --plugin runner.ImpactRecorder
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class ImpactRecorder implements ConcurrentEventListener {
+
+	private static final Json json = new Json();
+
+	private static Map<String, Map<String, Object>> index;
+
+	private static final ThreadLocal<Set<String>> glue = new ThreadLocal<Set<String>>();
+
+	@Override
+	public void setEventPublisher(EventPublisher publisher) {
+		publisher.registerHandlerFor(TestCaseStarted.class, new EventHandler<TestCaseStarted>() {
+			@Override
+			public void receive(TestCaseStarted event) {
+				glue.set(new TreeSet<String>());
+				UsageRecorder.start(scenarioId(event.testCase.getUri(), event.testCase.getLine()));
+			}
+		});
+		publisher.registerHandlerFor(TestStepFinished.class, new EventHandler<TestStepFinished>() {
+			@Override
+			public void receive(TestStepFinished event) {
+				Set<String> locations = glue.get();
+				if (locations != null && event.testStep.getCodeLocation() != null) {
+					locations.add(event.testStep.getCodeLocation());
+				}
+			}
+		});
+		publisher.registerHandlerFor(TestCaseFinished.class, new EventHandler<TestCaseFinished>() {
+			@Override
+			public void receive(TestCaseFinished event) {
+				UsageRecorder.Usage usage = UsageRecorder.stop();
+				Set<String> locations = glue.get();
+				glue.remove();
+				if (usage != null && locations != null) {
+					Map<String, Object> entry = new TreeMap<String, Object>();
+					entry.put("name", event.testCase.getName());
+					entry.put("glue", new ArrayList<String>(locations));
+					entry.put("pages", new ArrayList<String>(usage.getPages()));
+					entry.put("utils", new ArrayList<String>(usage.getUtils()));
+					put(usage.getScenario(), entry);
+				}
+			}
+		});
+		publisher.registerHandlerFor(TestRunFinished.class, new EventHandler<TestRunFinished>() {
+			@Override
+			public void receive(TestRunFinished event) {
+				save();
+			}
+		});
+	}
+
+	/**
+	 * @param uri  Feature uri (with or without "file:").
+	 * @param line Scenario line.
+	 * @return The id of a scenario in the index. I.e:
+	 *         "src/main/java/features/Example.feature:6".
+	 */
+	static String scenarioId(String uri, int line) {
+		return (uri.startsWith("file:") ? uri.substring("file:".length()) : uri) + ":" + line;
+	}
+
+	/**
+	 * Reads the index.
+	 * 
+	 * @param file Index file.
+	 * @return The entries of the index by scenario id (empty if the file doesn't
+	 *         exist).
+	 * @throws IOException If the file can't be read.
+	 */
+	static Map<String, Map<String, Object>> load(File file) throws IOException {
+		Map<String, Map<String, Object>> entries = new TreeMap<String, Map<String, Object>>();
+		if (file.isFile()) {
+			Map<String, Map<String, Object>> content = json
+					.toType(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), Json.MAP_TYPE);
+			entries.putAll(content);
+		}
+		return entries;
+	}
+
+	private static synchronized void put(String scenario, Map<String, Object> entry) {
+		if (index == null) {
+			try {
+				index = load(new File(ProjectProperties.IMPACT_INDEX_FILE));
+			} catch (IOException | RuntimeException e) {
+				System.out.println("The impact index can't be read, a new one will be created: " + e.getMessage());
+				index = new TreeMap<String, Map<String, Object>>();
+			}
+		}
+		index.put(scenario, entry);
+	}
+
+	private static synchronized void save() {
+		if (index == null) {
+			return;
+		}
+		File file = new File(ProjectProperties.IMPACT_INDEX_FILE);
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		try {
+			Files.write(file.toPath(), json.toJson(index).getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			System.out.println("It wasn't possible to write the impact index: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package runner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import core.ProjectProperties;
+
+/**
+ * Selects the scenarios affected by a list of changed files, using the index
+ * written by {@link ImpactRecorder}:
+ * <ul>
+ * <li>a feature file selects its scenarios;</li>
+ * <li>a class of the steps package selects the scenarios that ran one of its
+ * step definitions or hooks;</li>
+ * <li>a class of the pageObject package selects the scenarios that used it;</li>
+ * <li>util/Utils.java selects the scenarios that used Utils, or only the ones
+ * that used some methods when they are given ("src/main/java/util/Utils.java#clickJS,sendKeysJS").
+ * A method also selects the scenarios of every Utils method that calls it,
+ * directly or not, so a change to a private helper (I.e: find) selects the
+ * scenarios of the public methods that go through it;</li>
+ * <li>any other source, resource or build file selects every scenario.</li>
+ * </ul>
+ * Scenarios that are not in the index yet are always selected.
+ * <p>
+ * Usage: git diff --name-only main | ImpactSelector [--features dir] [files...]
+ * <p>
+ * The selection is printed and written to target/impact-selection.txt, which
+ * can be passed to Cucumber as "@target/impact-selection.txt".
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class ImpactSelector {
+
+	public static final String SELECTION_FILE = "target/impact-selection.txt";
+
+	private static final String SOURCES = "src/main/java/";
+
+	private static final String UTILS = SOURCES + "util/Utils.java";
+
+	private static final Pattern METHOD = Pattern
+			.compile("(?m)^\\t(?:public|protected|private)[^=;(]*?\\s(\\w+)\\s*\\([^)]*\\)[^;{]*\\{");
+
+	private ImpactSelector() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		String features = ScenarioCatalog.FEATURES;
+		List<String> changed = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if ("--features".equals(args[i]) && i + 1 < args.length) {
+				features = args[++i];
+			} else {
+				changed.add(args[i]);
+			}
+		}
+		if (changed.isEmpty()) {
+			BufferedReader input = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+			for (String line = input.readLine(); line != null; line = input.readLine()) {
+				if (!line.trim().isEmpty()) {
+					changed.add(line.trim());
+				}
+			}
+		}
+		Set<String> selected = select(changed, ScenarioCatalog.load(features, null),
+				ImpactRecorder.load(new File(ProjectProperties.IMPACT_INDEX_FILE)));
+		File file = new File(SELECTION_FILE);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), String.join("\n", selected).getBytes(StandardCharsets.UTF_8));
+		for (String scenario : selected) {
+			System.out.println(scenario);
+		}
+	}
+
+	/**
+	 * Selects the scenarios affected by the changed files.
+	 * 
+	 * @param changed   Paths of the changed files, relative to the project.
+	 * @param scenarios Every scenario of the feature files.
+	 * @param index     The change-impact index.
+	 * @return The ids (path:line) of the scenarios to run.
+	 */
+	@SuppressWarnings("unchecked")
+	public static Set<String> select(Collection<String> changed, List<ScenarioRef> scenarios,
+			Map<String, Map<String, Object>> index) {
+		Set<String> all = new TreeSet<String>();
+		Set<String> selected = new TreeSet<String>();
+		for (ScenarioRef scenario : scenarios) {
+			String id = ImpactRecorder.scenarioId(scenario.getUri(), scenario.getLine());
+			all.add(id);
+			if (!index.containsKey(id)) {
+				selected.add(id);
+			}
+		}
+
+		for (String path : changed) {
+			path = path.replace('\\', '/');
+			String methods = null;
+			if (path.contains("#")) {
+				methods = path.substring(path.indexOf('#') + 1);
+				path = path.substring(0, path.indexOf('#'));
+			}
+			if (path.endsWith(".feature")) {
+				for (String id : all) {
+					if (id.startsWith(path + ":")) {
+						selected.add(id);
+					}
+				}
+			} else if (path.startsWith(SOURCES + "steps/") && path.endsWith(".java")) {
+				String type = simpleName(path);
+				for (Map.Entry<String, Map<String, Object>> entry : index.entrySet()) {
+					for (String location : (List<String>) entry.getValue().get("glue")) {
+						if (location.startsWith(type + ".")) {
+							selected.add(entry.getKey());
+						}
+					}
+				}
+			} else if (path.startsWith(SOURCES + "pageObject/") && path.endsWith(".java")) {
+				String type = path.substring(SOURCES.length(), path.length() - ".java".length()).replace('/', '.');
+				for (Map.Entry<String, Map<String, Object>> entry : index.entrySet()) {
+					if (((List<String>) entry.getValue().get("pages")).contains(type)) {
+						selected.add(entry.getKey());
+					}
+				}
+			} else if (path.equals(UTILS)) {
+				Set<String> names = methods == null ? null : callersOf(Arrays.asList(methods.split(",")));
+				for (Map.Entry<String, Map<String, Object>> entry : index.entrySet()) {
+					for (String method : (List<String>) entry.getValue().get("utils")) {
+						if (names == null || names.contains(method)) {
+							selected.add(entry.getKey());
+						}
+					}
+				}
+			} else if (path.startsWith("src/") || path.equals("pom.xml")) {
+				selected.addAll(all);
+			}
+		}
+		// Only scenarios that still exist.
+		selected.retainAll(all);
+		return selected;
+	}
+
+	/**
+	 * @param methods Methods of Utils.
+	 * @return The methods and every method of Utils that calls one of them,
+	 *         directly or not, read from the source of Utils. Null (every method)
+	 *         if the source can't be read.
+	 */
+	static Set<String> callersOf(Collection<String> methods) {
+		String source;
+		try {
+			source = new String(Files.readAllBytes(new File(UTILS).toPath()), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			System.out.println("It wasn't possible to read " + UTILS + ", every scenario that used Utils is selected: "
+					+ e.getMessage());
+			return null;
+		}
+		// The body of a method runs up to the next declaration; overloads share a name.
+		Map<String, StringBuilder> bodies = new LinkedHashMap<String, StringBuilder>();
+		Matcher matcher = METHOD.matcher(source);
+		List<String> names = new ArrayList<String>();
+		List<Integer> starts = new ArrayList<Integer>();
+		List<Integer> declarations = new ArrayList<Integer>();
+		while (matcher.find()) {
+			names.add(matcher.group(1));
+			declarations.add(matcher.start());
+			starts.add(matcher.end());
+		}
+		for (int i = 0; i < names.size(); i++) {
+			int end = i + 1 < declarations.size() ? declarations.get(i + 1) : source.length();
+			StringBuilder body = bodies.get(names.get(i));
+			if (body == null) {
+				body = new StringBuilder();
+				bodies.put(names.get(i), body);
+			}
+			body.append(source, starts.get(i), end).append('\n');
+		}
+
+		Set<String> selected = new TreeSet<String>(methods);
+		boolean grew = true;
+		while (grew) {
+			grew = false;
+			for (Map.Entry<String, StringBuilder> method : bodies.entrySet()) {
+				if (selected.contains(method.getKey())) {
+					continue;
+				}
+				for (String callee : selected) {
+					if (Pattern.compile("\\b" + Pattern.quote(callee) + "\\s*\\(").matcher(method.getValue()).find()) {
+						selected.add(method.getKey());
+						grew = true;
+						break;
+					}
+				}
+			}
+		}
+		return selected;
+	}
+
+	private static String simpleName(String path) {
+		return path.substring(path.lastIndexOf('/') + 1, path.length() - ".java".length());
+	}
+}
@@ -0,0 +1,57 @@
+package runner;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import cucumber.runtime.ClassFinder;
+import cucumber.runtime.io.ResourceLoader;
+import cucumber.runtime.io.ResourceLoaderClassFinder;
+import io.cucumber.core.model.GluePath;
+
+/**
+ * Gives Cucumber the glue classes listed by the {@link FeatureIndex} instead of
+ * every class of the glue package. Other packages (I.e: the ones Cucumber
+ * searches for its backends and object factories), and the glue package when
+ * the index is missing or stale, are scanned as Cucumber does.
+ * 
+ * @author Bruno Fraga
+ *
+ */
+class IndexedClassFinder implements ClassFinder {
+
+	private static final URI GLUE = GluePath.parse(ScenarioExecutor.GLUE);
+
+	private final ClassFinder scanner;
+	private final List<String> glue;
+
+	IndexedClassFinder(ResourceLoader resourceLoader, ClassLoader classLoader) {
+		this.scanner = new ResourceLoaderClassFinder(resourceLoader, classLoader);
+		this.glue = FeatureIndex.glueClasses(classLoader);
+	}
+
+	@Override
+	public <T> Collection<Class<? extends T>> getDescendants(Class<T> parentType, URI packageName) {
+		if (glue == null || !GLUE.equals(packageName)) {
+			return scanner.getDescendants(parentType, packageName);
+		}
+		List<Class<? extends T>> descendants = new ArrayList<Class<? extends T>>();
+		for (String name : glue) {
+			try {
+				Class<? extends T> type = scanner.loadClass(name);
+				if (parentType.isAssignableFrom(type) && !parentType.equals(type)) {
+					descendants.add(type);
+				}
+			} catch (ClassNotFoundException e) {
+				return scanner.getDescendants(parentType, packageName);
+			}
+		}
+		return descendants;
+	}
+
+	@Override
+	public <T> Class<? extends T> loadClass(String className) throws ClassNotFoundException {
+		return scanner.loadClass(className);
+	}
+}
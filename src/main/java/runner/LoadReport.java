@@ -0,0 +1,151 @@
+package runner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Collects the results of a {@link LoadRunner} run: the duration of every step
+ * (for the percentiles) and, for each interval of time, the number of
+ * scenarios, failures and steps (for the throughput and error rate over time).
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class LoadReport implements StepTimings.Listener {
+
+	private final long start = System.nanoTime();
+	private final long intervalNanos;
+
+	private final Map<String, Durations> steps = new TreeMap<String, Durations>();
+	private final Map<Long, Interval> intervals = new TreeMap<Long, Interval>();
+
+	/**
+	 * The durations of a step.
+	 */
+	private static class Durations {
+		private long[] values = new long[64];
+		private int size;
+		private int errors;
+
+		private void add(long value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+	}
+
+	/**
+	 * The counters of an interval of time.
+	 */
+	private static class Interval {
+		private int scenarios;
+		private int scenarioErrors;
+		private int steps;
+		private int stepErrors;
+		private int users;
+	}
+
+	/**
+	 * @param intervalSeconds Size of each interval of the time series.
+	 */
+	public LoadReport(int intervalSeconds) {
+		this.intervalNanos = intervalSeconds * 1_000_000_000L;
+	}
+
+	@Override
+	public synchronized void stepFinished(String scenario, String step, long durationNanos, boolean passed) {
+		Durations durations = steps.get(step);
+		if (durations == null) {
+			durations = new Durations();
+			steps.put(step, durations);
+		}
+		durations.add(durationNanos);
+		Interval interval = current();
+		interval.steps++;
+		if (!passed) {
+			durations.errors++;
+			interval.stepErrors++;
+		}
+	}
+
+	/**
+	 * Must be called when a virtual user finishes a scenario.
+	 * 
+	 * @param passed      The result of the scenario.
+	 * @param activeUsers Virtual users running at this moment.
+	 */
+	public synchronized void scenarioFinished(boolean passed, int activeUsers) {
+		Interval interval = current();
+		interval.scenarios++;
+		interval.users = Math.max(interval.users, activeUsers);
+		if (!passed) {
+			interval.scenarioErrors++;
+		}
+	}
+
+	/**
+	 * Writes the report: a CSV with the percentiles of each step, a CSV with the
+	 * time series and a summary on the console.
+	 * 
+	 * @param directory Directory of the CSV files.
+	 * @throws IOException If a file can't be written.
+	 */
+	public synchronized void write(File directory) throws IOException {
+		directory.mkdirs();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		int scenarios = 0;
+		int errors = 0;
+		try (PrintWriter writer = new PrintWriter(new File(directory, "load-timeline.csv"), "UTF-8")) {
+			writer.println("second,users,scenarios,scenarios_per_s,scenario_error_rate,steps,step_error_rate");
+			for (Map.Entry<Long, Interval> entry : intervals.entrySet()) {
+				Interval interval = entry.getValue();
+				scenarios += interval.scenarios;
+				errors += interval.scenarioErrors;
+				writer.println(String.format(Locale.ROOT, "%d,%d,%d,%.3f,%.4f,%d,%.4f",
+						entry.getKey() * intervalNanos / 1_000_000_000L, interval.users, interval.scenarios,
+						interval.scenarios / (intervalNanos / 1e9), rate(interval.scenarioErrors, interval.scenarios),
+						interval.steps, rate(interval.stepErrors, interval.steps)));
+			}
+		}
+		System.out.println(String.format(Locale.ROOT, "%d scenario(s) in %.0f s: %.2f scenarios/s, %.2f%% failed",
+				scenarios, seconds, scenarios / seconds, rate(errors, scenarios) * 100));
+		try (PrintWriter writer = new PrintWriter(new File(directory, "load-steps.csv"), "UTF-8")) {
+			writer.println("step,count,error_rate,p50_ms,p90_ms,p95_ms,p99_ms,max_ms");
+			for (Map.Entry<String, Durations> entry : steps.entrySet()) {
+				Durations durations = entry.getValue();
+				long[] sorted = Arrays.copyOf(durations.values, durations.size);
+				Arrays.sort(sorted);
+				String line = String.format(Locale.ROOT, "%d,%.4f,%.1f,%.1f,%.1f,%.1f,%.1f", durations.size,
+						rate(durations.errors, durations.size), percentile(sorted, 50), percentile(sorted, 90),
+						percentile(sorted, 95), percentile(sorted, 99), sorted[sorted.length - 1] / 1e6);
+				writer.println("\"" + entry.getKey().replace("\"", "\"\"") + "\"," + line);
+				System.out.println("  " + entry.getKey() + ": " + line);
+			}
+		}
+	}
+
+	private Interval current() {
+		long index = (System.nanoTime() - start) / intervalNanos;
+		Interval interval = intervals.get(index);
+		if (interval == null) {
+			interval = new Interval();
+			intervals.put(index, interval);
+		}
+		return interval;
+	}
+
+	private static double rate(int part, int total) {
+		return total == 0 ? 0 : (double) part / total;
+	}
+
+	private static double percentile(long[] sorted, int percentile) {
+		int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(0, index)] / 1e6;
+	}
+}
@@ -0,0 +1,153 @@
+package runner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import core.ProjectProperties;
+import util.LocatorProfiler;
+
+/**
+ * Uses the feature files and the steps package as a load test: N virtual users,
+ * each one with its own headless browser, run the selected scenarios again and
+ * again until the duration ends. The users start along the ramp-up time. The
+ * per-step latency percentiles, the throughput and the error rate over time are
+ * written by {@link LoadReport} into target/load-report.
+ * <p>
+ * Usage: LoadRunner [--features dir] [--tags expression] [--users 5] [--ramp-up
+ * 30] [--duration 300] [--interval 10] [--fixture dir]
+ * <p>
+ * With --fixture the files of the directory are served by a
+ * {@link FixtureServer} and ProjectProperties.BASE_URL points to it, so steps
+ * navigating to "/page.html" use the local pages.
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class LoadRunner {
+
+	private LoadRunner() {
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String features = ScenarioCatalog.FEATURES;
+		String tags = null;
+		String fixture = null;
+		int users = 5;
+		int rampUp = 30;
+		int duration = 300;
+		int interval = 10;
+		for (int i = 0; i < args.length - 1; i++) {
+			if ("--features".equals(args[i])) {
+				features = args[++i];
+			} else if ("--tags".equals(args[i])) {
+				tags = args[++i];
+			} else if ("--fixture".equals(args[i])) {
+				fixture = args[++i];
+			} else if ("--users".equals(args[i])) {
+				users = Integer.parseInt(args[++i]);
+			} else if ("--ramp-up".equals(args[i])) {
+				rampUp = Integer.parseInt(args[++i]);
+			} else if ("--duration".equals(args[i])) {
+				duration = Integer.parseInt(args[++i]);
+			} else if ("--interval".equals(args[i])) {
+				interval = Integer.parseInt(args[++i]);
+			}
+		}
+
+		List<ScenarioRef> scenarios = ScenarioCatalog.load(features, tags);
+		if (scenarios.isEmpty()) {
+			System.out.println("No scenario selected.");
+			System.exit(1);
+		}
+		FixtureServer server = null;
+		if (fixture != null) {
+			server = FixtureServer.start(new File(fixture));
+			ProjectProperties.BASE_URL = server.getUrl();
+			System.out.println("Fixture server: " + server.getUrl());
+		}
+		try {
+			LoadReport report = run(scenarios, users, rampUp, duration, interval);
+			report.write(new File("target/load-report"));
+			if (LocatorProfiler.isEnabled()) {
+				LocatorProfiler.save();
+			}
+		} finally {
+			if (server != null) {
+				server.stop();
+			}
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Runs the load test and waits for it to finish.
+	 * 
+	 * @param scenarios       The scenarios each virtual user runs, in turns.
+	 * @param users           Number of virtual users.
+	 * @param rampUpSeconds   Time to start all the users.
+	 * @param durationSeconds Total time of the test, ramp-up included.
+	 * @param intervalSeconds Size of each interval of the time series.
+	 * @return The collected results.
+	 * @throws InterruptedException If the thread is interrupted while waiting.
+	 */
+	public static LoadReport run(final List<ScenarioRef> scenarios, final int users, final int rampUpSeconds,
+			int durationSeconds, int intervalSeconds) throws InterruptedException {
+		ProjectProperties.HEADLESS = true;
+		final LoadReport report = new LoadReport(intervalSeconds);
+		final long start = System.nanoTime();
+		final long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+		final AtomicInteger active = new AtomicInteger();
+		StepTimings.addListener(report);
+
+		ExecutorService pool = Executors.newFixedThreadPool(users, new ParallelRunner.WorkerThreadFactory());
+		try {
+			for (int i = 0; i < users; i++) {
+				final int user = i;
+				pool.execute(new Runnable() {
+					@Override
+					public void run() {
+						long startAt = start + TimeUnit.SECONDS.toNanos(rampUpSeconds) * user / users;
+						if (!sleepUntil(startAt) || System.nanoTime() >= end) {
+							return;
+						}
+						active.incrementAndGet();
+						try {
+							// Each user starts at a different scenario so the mix is even from the beginning.
+							for (int turn = user; System.nanoTime() < end; turn++) {
+								boolean passed = ScenarioExecutor.run(scenarios.get(turn % scenarios.size()));
+								report.scenarioFinished(passed, active.get());
+							}
+						} finally {
+							active.decrementAndGet();
+						}
+					}
+				});
+			}
+			pool.shutdown();
+			pool.awaitTermination(durationSeconds + 600L, TimeUnit.SECONDS);
+		} finally {
+			pool.shutdownNow();
+			StepTimings.removeListener(report);
+		}
+		return report;
+	}
+
+	private static boolean sleepUntil(long nanoTime) {
+		long wait = nanoTime - System.nanoTime();
+		if (wait <= 0) {
+			return true;
+		}
+		try {
+			TimeUnit.NANOSECONDS.sleep(wait);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package runner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import core.DriverFactory;
+import core.ProjectProperties;
+import util.LocatorProfiler;
+
+/**
+ * Runs the scenarios of the feature files in parallel, one browser session per
+ * worker thread (or one tab per worker, see ProjectProperties.TABS_PER_BROWSER).
+ * The number of workers is {@link ProjectProperties#WORKERS} or, when it's 0, is
+ * chosen and adjusted by {@link WorkerController}.
+ * <p>
+ * Usage: ParallelRunner [--features dir] [--tags expression]
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class ParallelRunner {
+
+	private ParallelRunner() {
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String features = ScenarioCatalog.FEATURES;
+		String tags = null;
+		for (int i = 0; i < args.length - 1; i++) {
+			if ("--features".equals(args[i])) {
+				features = args[++i];
+			} else if ("--tags".equals(args[i])) {
+				tags = args[++i];
+			}
+		}
+		List<ScenarioRef> scenarios = ScenarioCatalog.load(features, tags);
+		new File(ScenarioProgress.DEFAULT_FILE).delete();
+		List<ScenarioRef> failed = run(scenarios, "--plugin", ScenarioProgress.class.getName(), "--plugin",
+				ImpactRecorder.class.getName());
+		if (LocatorProfiler.isEnabled()) {
+			LocatorProfiler.save();
+		}
+		System.out.println(scenarios.size() + " scenario(s), " + failed.size() + " failed");
+		for (ScenarioRef scenario : failed) {
+			System.out.println("  FAILED " + scenario);
+		}
+		if (!ProjectProperties.JSON_REPORT_DIR.isEmpty()) {
+			ReportGenerator.generate(new File(ProjectProperties.JSON_REPORT_DIR),
+					new File(ProjectProperties.HTML_REPORT_DIR));
+		}
+		System.exit(failed.isEmpty() ? 0 : 1);
+	}
+
+	/**
+	 * Runs scenarios in parallel and waits for all of them. Each scenario writes its
+	 * Cucumber JSON into {@link ProjectProperties#JSON_REPORT_DIR} (the files of
+	 * previous runs are removed).
+	 * 
+	 * @param scenarios The scenarios to run.
+	 * @param options   Additional Cucumber options for every scenario.
+	 * @return The scenarios that failed.
+	 * @throws InterruptedException If the thread is interrupted while waiting.
+	 */
+	public static List<ScenarioRef> run(List<ScenarioRef> scenarios, final String... options)
+			throws InterruptedException {
+		final List<ScenarioRef> failed = Collections.synchronizedList(new ArrayList<ScenarioRef>());
+		final CountDownLatch done = new CountDownLatch(scenarios.size());
+		final WorkerController controller = ProjectProperties.WORKERS > 0 ? null : new WorkerController();
+		int workers = controller == null ? ProjectProperties.WORKERS : controller.getWorkers();
+		final File jsonDir = ProjectProperties.JSON_REPORT_DIR.isEmpty() ? null
+				: new File(ProjectProperties.JSON_REPORT_DIR);
+		if (jsonDir != null) {
+			jsonDir.mkdirs();
+			for (File old : jsonDir.listFiles()) {
+				old.delete();
+			}
+		}
+		final AtomicInteger index = new AtomicInteger();
+
+		final ThreadPoolExecutor pool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+		if (controller != null) {
+			StepTimings.addListener(controller);
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					resize(pool, controller.adjust());
+				}
+			}, ProjectProperties.WORKERS_ADJUST_INTERVAL, ProjectProperties.WORKERS_ADJUST_INTERVAL, TimeUnit.SECONDS);
+		}
+
+		try {
+			for (final ScenarioRef scenario : scenarios) {
+				pool.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							List<String> arguments = new ArrayList<String>(Arrays.asList(options));
+							if (jsonDir != null) {
+								arguments.add("--plugin");
+								arguments.add("json:" + new File(jsonDir, "scenario-" + index.incrementAndGet() + ".json"));
+							}
+							boolean passed = ScenarioExecutor.run(scenario, arguments.toArray(new String[0]));
+							System.out.println((passed ? "PASSED " : "FAILED ") + scenario + " ["
+									+ Thread.currentThread().getName() + "]");
+							if (!passed) {
+								failed.add(scenario);
+							}
+						} finally {
+							if (controller != null) {
+								controller.scenarioFinished();
+							}
+							done.countDown();
+						}
+					}
+				});
+			}
+			done.await();
+		} finally {
+			scheduler.shutdownNow();
+			pool.shutdown();
+			pool.awaitTermination(1, TimeUnit.MINUTES);
+			if (controller != null) {
+				StepTimings.removeListener(controller);
+			}
+		}
+		return failed;
+	}
+
+	private static synchronized void resize(ThreadPoolExecutor pool, int workers) {
+		if (workers > pool.getMaximumPoolSize()) {
+			pool.setMaximumPoolSize(workers);
+			pool.setCorePoolSize(workers);
+		} else if (workers < pool.getMaximumPoolSize()) {
+			pool.setCorePoolSize(workers);
+			pool.setMaximumPoolSize(workers);
+		}
+	}
+
+	/**
+	 * Creates the worker threads. When a worker thread ends (the pool was reduced
+	 * or the run finished) its browser session is closed.
+	 */
+	static class WorkerThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(final Runnable worker) {
+			return new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						worker.run();
+					} finally {
+						try {
+							DriverFactory.killDriver();
+						} catch (Exception e) {
+							System.out.println("It wasn't possible to close the browser of "
+									+ Thread.currentThread().getName() + ": " + e.getMessage());
+						}
+					}
+				}
+			}, "worker-" + count.incrementAndGet());
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package runner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import core.ProjectProperties;
+import net.masterthought.cucumber.Configuration;
+import net.masterthought.cucumber.ReportBuilder;
+import net.masterthought.cucumber.Reportable;
+
+/**
+ * Builds the HTML report (cucumber-reporting) from the many small Cucumber JSON
+ * files written by the workers of {@link ParallelRunner}, instead of a single
+ * JSON with the whole run. The files are checked in parallel and the ones left
+ * empty or truncated (I.e: by a crashed worker) are skipped, so they don't break
+ * the report.
+ * <p>
+ * Usage: ReportGenerator [--json target/cucumber-json] [--output
+ * target/cucumber-html]
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class ReportGenerator {
+
+	private ReportGenerator() {
+	}
+
+	public static void main(String[] args) {
+		String jsonDir = ProjectProperties.JSON_REPORT_DIR;
+		String output = ProjectProperties.HTML_REPORT_DIR;
+		for (int i = 0; i < args.length - 1; i++) {
+			if ("--json".equals(args[i])) {
+				jsonDir = args[++i];
+			} else if ("--output".equals(args[i])) {
+				output = args[++i];
+			}
+		}
+		System.exit(generate(new File(jsonDir), new File(output)) == null ? 1 : 0);
+	}
+
+	/**
+	 * Builds the HTML report.
+	 * 
+	 * @param jsonDir Directory with the Cucumber JSON files.
+	 * @param output  Directory of the HTML report.
+	 * @return The report summary, or null if there wasn't any valid JSON file or the
+	 *         report failed.
+	 */
+	public static Reportable generate(File jsonDir, File output) {
+		File[] files = jsonDir.listFiles((dir, name) -> name.endsWith(".json"));
+		if (files == null || files.length == 0) {
+			System.out.println("No Cucumber JSON file found in " + jsonDir);
+			return null;
+		}
+		List<String> valid = Arrays.stream(files).parallel().filter(ReportGenerator::isComplete).map(File::getPath)
+				.sorted().collect(Collectors.toCollection(ArrayList::new));
+		if (valid.size() < files.length) {
+			System.out.println((files.length - valid.size()) + " empty or truncated JSON file(s) skipped.");
+		}
+		if (valid.isEmpty()) {
+			return null;
+		}
+		Reportable result = new ReportBuilder(valid, new Configuration(output, "FrameworkWeb")).generateReports();
+		System.out.println("HTML report: " + new File(output, "cucumber-html-reports/overview-features.html"));
+		return result;
+	}
+
+	/**
+	 * A complete Cucumber JSON report is an array, so it starts with '[' and ends
+	 * with ']'. Only the edges of the file are read.
+	 */
+	private static boolean isComplete(File file) {
+		try (RandomAccessFile content = new RandomAccessFile(file, "r")) {
+			return firstNonBlank(content, 0, 1) == '[' && firstNonBlank(content, content.length() - 1, -1) == ']';
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private static int firstNonBlank(RandomAccessFile content, long position, int direction) throws IOException {
+		for (long i = position; i >= 0 && i < content.length(); i += direction) {
+			content.seek(i);
+			int value = content.read();
+			if (!Character.isWhitespace(value)) {
+				return value;
+			}
+		}
+		return -1;
+	}
+}
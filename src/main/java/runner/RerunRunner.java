@@ -0,0 +1,211 @@
+package runner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.json.Json;
+
+import core.DriverFactory;
+import core.ProjectProperties;
+
+/**
+ * Reruns only the scenarios of a previous run that failed for infrastructure
+ * reasons (see {@link FailureClassifier}), each one in a new browser session and
+ * in parallel. The results are merged into a single Cucumber JSON report where
+ * the scenarios that passed on the rerun have the tag @flaky.
+ * <p>
+ * Usage: RerunRunner [--report target/cucumber.json] [--output
+ * target/cucumber-merged.json]
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class RerunRunner {
+
+	private static final String RERUN_DIR = "target/rerun";
+
+	private static final Json json = new Json();
+
+	private RerunRunner() {
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String report = "target/cucumber.json";
+		String output = "target/cucumber-merged.json";
+		for (int i = 0; i < args.length - 1; i++) {
+			if ("--report".equals(args[i])) {
+				report = args[++i];
+			} else if ("--output".equals(args[i])) {
+				output = args[++i];
+			}
+		}
+		System.exit(run(new File(report), new File(output)) ? 0 : 1);
+	}
+
+	/**
+	 * Reruns the retryable failures of a report and writes the merged report.
+	 * 
+	 * @param report Cucumber JSON report of the first run.
+	 * @param output Merged Cucumber JSON report.
+	 * @return True if every scenario passed (on the first run or on the rerun).
+	 * @throws IOException          If a report can't be read or written.
+	 * @throws InterruptedException If the thread is interrupted while waiting.
+	 */
+	public static boolean run(File report, File output) throws IOException, InterruptedException {
+		List<Map<String, Object>> features = read(report);
+		Map<String, Map<String, Object>> retryable = new LinkedHashMap<String, Map<String, Object>>();
+		int failures = 0;
+		for (Map<String, Object> feature : features) {
+			for (Map<String, Object> scenario : elements(feature)) {
+				String error = firstError(scenario);
+				if (error == null) {
+					continue;
+				}
+				failures++;
+				FailureClassifier.Type type = FailureClassifier.classify(error);
+				String location = feature.get("uri") + ":" + scenario.get("line");
+				System.out.println(type + " " + location + " " + scenario.get("name"));
+				if (type == FailureClassifier.Type.INFRASTRUCTURE) {
+					retryable.put(location, scenario);
+				}
+			}
+		}
+		System.out.println(failures + " failed scenario(s), " + retryable.size() + " will run again.");
+
+		Map<String, Map<String, Object>> reruns = rerun(new ArrayList<String>(retryable.keySet()));
+
+		boolean passed = true;
+		for (Map<String, Object> feature : features) {
+			List<Map<String, Object>> merged = new ArrayList<Map<String, Object>>();
+			for (Map<String, Object> scenario : elements(feature)) {
+				Map<String, Object> rerun = reruns.get(feature.get("uri") + ":" + scenario.get("line"));
+				if (rerun != null) {
+					scenario = rerun;
+					if (firstError(rerun) == null) {
+						tagAsFlaky(rerun);
+						System.out.println("FLAKY " + feature.get("uri") + ":" + rerun.get("line") + " " + rerun.get("name"));
+					}
+				}
+				passed &= firstError(scenario) == null;
+				merged.add(scenario);
+			}
+			feature.put("elements", merged);
+		}
+		if (output.getParentFile() != null) {
+			output.getParentFile().mkdirs();
+		}
+		Files.write(output.toPath(), json.toJson(features).getBytes(StandardCharsets.UTF_8));
+		return passed;
+	}
+
+	/**
+	 * Runs each scenario in a new browser session, in parallel.
+	 * 
+	 * @return The scenario element of the rerun report, by location.
+	 */
+	private static Map<String, Map<String, Object>> rerun(List<String> locations) throws InterruptedException {
+		final Map<String, Map<String, Object>> results = new ConcurrentHashMap<String, Map<String, Object>>();
+		if (locations.isEmpty()) {
+			return results;
+		}
+		int workers = ProjectProperties.WORKERS > 0 ? ProjectProperties.WORKERS
+				: Runtime.getRuntime().availableProcessors();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(workers, locations.size()),
+				new ParallelRunner.WorkerThreadFactory());
+		new File(RERUN_DIR).mkdirs();
+		for (int i = 0; i < locations.size(); i++) {
+			final String location = locations.get(i);
+			final File result = new File(RERUN_DIR, "rerun-" + i + ".json");
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					DriverFactory.killDriver();
+					try {
+						int separator = location.lastIndexOf(':');
+						ScenarioRef scenario = new ScenarioRef(location.substring(0, separator),
+								Integer.parseInt(location.substring(separator + 1)), "", new ArrayList<String>());
+						ScenarioExecutor.run(scenario, "--plugin", "json:" + result.getPath());
+						for (Map<String, Object> feature : read(result)) {
+							for (Map<String, Object> element : elements(feature)) {
+								results.put(location, element);
+							}
+						}
+					} catch (IOException | RuntimeException e) {
+						System.out.println("It wasn't possible to rerun " + location + ": " + e.getMessage());
+					} finally {
+						DriverFactory.killDriver();
+					}
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(1, TimeUnit.DAYS);
+		return results;
+	}
+
+	private static List<Map<String, Object>> read(File report) throws IOException {
+		String content = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+		return json.toType(content, Json.LIST_OF_MAPS_TYPE);
+	}
+
+	/**
+	 * @return The scenarios of a feature of the report (backgrounds are skipped).
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<Map<String, Object>> elements(Map<String, Object> feature) {
+		List<Map<String, Object>> scenarios = new ArrayList<Map<String, Object>>();
+		Object elements = feature.get("elements");
+		if (elements instanceof List) {
+			for (Map<String, Object> element : (List<Map<String, Object>>) elements) {
+				if (!"background".equals(element.get("type"))) {
+					scenarios.add(element);
+				}
+			}
+		}
+		return scenarios;
+	}
+
+	/**
+	 * @return The error message of the first failed step or hook of a scenario, or
+	 *         null if nothing failed.
+	 */
+	@SuppressWarnings("unchecked")
+	private static String firstError(Map<String, Object> scenario) {
+		for (String section : new String[] { "before", "steps", "after" }) {
+			Object items = scenario.get(section);
+			if (!(items instanceof List)) {
+				continue;
+			}
+			for (Map<String, Object> item : (List<Map<String, Object>>) items) {
+				Map<String, Object> result = (Map<String, Object>) item.get("result");
+				if (result != null && "failed".equals(result.get("status"))) {
+					Object message = result.get("error_message");
+					return message == null ? "" : message.toString();
+				}
+			}
+		}
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void tagAsFlaky(Map<String, Object> scenario) {
+		List<Object> tags = scenario.get("tags") instanceof List
+				? new ArrayList<Object>((List<Object>) scenario.get("tags"))
+				: new ArrayList<Object>();
+		Map<String, Object> flaky = new HashMap<String, Object>();
+		flaky.put("name", "@flaky");
+		tags.add(flaky);
+		scenario.put("tags", tags);
+	}
+}
@@ -0,0 +1,105 @@
+package runner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import gherkin.AstBuilder;
+import gherkin.Parser;
+import gherkin.ast.GherkinDocument;
+import gherkin.pickles.Compiler;
+import gherkin.pickles.Pickle;
+import gherkin.pickles.PickleTag;
+import io.cucumber.tagexpressions.Expression;
+import io.cucumber.tagexpressions.TagExpressionParser;
+
+/**
+ * Lists the scenarios of the feature files, so the runners of this package can
+ * schedule them one by one.
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class ScenarioCatalog {
+
+	public static final String FEATURES = "src/main/java/features";
+
+	private ScenarioCatalog() {
+	}
+
+	/**
+	 * Lists the scenarios of every feature file inside a directory. The feature
+	 * files are only parsed when the {@link FeatureIndex} is missing or stale.
+	 * 
+	 * @param featuresDir   Directory with the feature files.
+	 * @param tagExpression Cucumber tag expression (I.e: "@Smoke and not @Wip"), or
+	 *                      null to select every scenario.
+	 * @return The scenarios, ordered by file and line.
+	 * @throws IOException If a feature file can't be read.
+	 */
+	public static List<ScenarioRef> load(String featuresDir, String tagExpression) throws IOException {
+		Expression filter = tagExpression == null || tagExpression.trim().isEmpty() ? null
+				: new TagExpressionParser().parse(tagExpression);
+		List<ScenarioRef> all = FeatureIndex.scenarios(featuresDir);
+		if (all == null) {
+			all = new ArrayList<ScenarioRef>();
+			for (File feature : featureFiles(new File(featuresDir))) {
+				all.addAll(parse(feature));
+			}
+		}
+		List<ScenarioRef> scenarios = new ArrayList<ScenarioRef>();
+		for (ScenarioRef scenario : all) {
+			if (filter == null || filter.evaluate(scenario.getTags())) {
+				scenarios.add(scenario);
+			}
+		}
+		return scenarios;
+	}
+
+	/**
+	 * Lists the scenarios of a single feature file.
+	 * 
+	 * @param feature Feature file.
+	 * @return The scenarios of the file, ordered by line.
+	 * @throws IOException If the file can't be read.
+	 */
+	public static List<ScenarioRef> parse(File feature) throws IOException {
+		String source = new String(Files.readAllBytes(feature.toPath()), StandardCharsets.UTF_8);
+		GherkinDocument document = new Parser<GherkinDocument>(new AstBuilder()).parse(source);
+		String uri = feature.getPath().replace(File.separatorChar, '/');
+		List<ScenarioRef> scenarios = new ArrayList<ScenarioRef>();
+		for (Pickle pickle : new Compiler().compile(document)) {
+			List<String> tags = new ArrayList<String>();
+			for (PickleTag tag : pickle.getTags()) {
+				tags.add(tag.getName());
+			}
+			scenarios.add(new ScenarioRef(uri, pickle.getLocations().get(0).getLine(), pickle.getName(), tags));
+		}
+		return scenarios;
+	}
+
+	/**
+	 * @param directory Directory with the feature files.
+	 * @return Every .feature file inside the directory and its subdirectories,
+	 *         sorted by path.
+	 */
+	public static List<File> featureFiles(File directory) {
+		List<File> files = new ArrayList<File>();
+		File[] entries = directory.listFiles();
+		if (entries != null) {
+			for (File entry : entries) {
+				if (entry.isDirectory()) {
+					files.addAll(featureFiles(entry));
+				} else if (entry.getName().endsWith(".feature")) {
+					files.add(entry);
+				}
+			}
+		}
+		Collections.sort(files);
+		return files;
+	}
+}
@@ -0,0 +1,65 @@
+package runner;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import cucumber.runtime.Env;
+import cucumber.runtime.Runtime;
+import cucumber.runtime.io.MultiLoader;
+import cucumber.runtime.io.ResourceLoader;
+import io.cucumber.core.options.CommandlineOptionsParser;
+import io.cucumber.core.options.EnvironmentOptionsParser;
+import io.cucumber.core.options.RuntimeOptions;
+
+/**
+ * Runs a single scenario with Cucumber in the calling thread, using the same
+ * glue of {@link TestRunner}. Each thread has its own browser session (see
+ * core.DriverFactory), so several threads can run scenarios at the same time.
+ * <p>
+ * The options are parsed as Cucumber's Main does, but the features come from
+ * the parsed features kept by {@link FeatureIndex} and the glue classes from
+ * its index (see {@link IndexedClassFinder}), so a scenario doesn't parse its
+ * feature file or scan the glue package again.
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class ScenarioExecutor {
+
+	public static final String GLUE = "steps";
+
+	private ScenarioExecutor() {
+	}
+
+	/**
+	 * Runs a scenario.
+	 * 
+	 * @param scenario The scenario to run.
+	 * @param options  Additional Cucumber options. I.e: "--plugin",
+	 *                 "json:target/a.json".
+	 * @return True if the scenario passed, False if it's not.
+	 */
+	public static boolean run(ScenarioRef scenario, String... options) {
+		List<String> argv = new ArrayList<String>();
+		argv.addAll(Arrays.asList("--glue", GLUE, "--plugin", StepTimings.class.getName(), "--plugin",
+				"null_summary", "--monochrome"));
+		argv.addAll(Arrays.asList(options));
+		argv.add(scenario.getLocation());
+
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		final ResourceLoader resourceLoader = new MultiLoader(classLoader);
+		RuntimeOptions runtimeOptions = new CommandlineOptionsParser(resourceLoader).parse(argv)
+				.addDefaultFormatterIfNotPresent().addDefaultSummaryPrinterIfNotPresent().build();
+		new EnvironmentOptionsParser(resourceLoader).parse(Env.INSTANCE).build(runtimeOptions);
+		final List<URI> featurePaths = runtimeOptions.getFeaturePaths();
+
+		Runtime runtime = Runtime.builder().withRuntimeOptions(runtimeOptions).withClassLoader(classLoader)
+				.withResourceLoader(resourceLoader)
+				.withClassFinder(new IndexedClassFinder(resourceLoader, classLoader))
+				.withFeatureSupplier(() -> FeatureIndex.features(resourceLoader, featurePaths)).build();
+		runtime.run();
+		return runtime.exitStatus() == 0;
+	}
+}
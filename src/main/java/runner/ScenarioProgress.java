@@ -0,0 +1,171 @@
+package runner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openqa.selenium.json.Json;
+
+import cucumber.api.Result;
+import cucumber.api.TestCase;
+import cucumber.api.event.ConcurrentEventListener;
+import cucumber.api.event.EventHandler;
+import cucumber.api.event.EventPublisher;
+import cucumber.api.event.TestCaseFinished;
+import cucumber.api.event.TestRunFinished;
+import cucumber.api.event.TestRunStarted;
+import gherkin.pickles.PickleTag;
+
+/**
+ * Cucumber plugin that appends one JSON line (NDJSON) per finished scenario,
+ * flushed immediately, so a dashboard can follow a run while it happens. Every
+ * Cucumber run of the JVM (I.e: the workers of {@link ParallelRunner}) can
+ * write to the same file.
+ * <p>
+ * The first run of the JVM truncates the file, so it only has the scenarios of
+ * this run, and the file is closed when the last run that writes to it
+ * finishes.
+ * <p>
+ * Usage: --plugin runner.ScenarioProgress:target/cucumber-progress.ndjson
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class ScenarioProgress implements ConcurrentEventListener {
+
+	public static final String DEFAULT_FILE = "target/cucumber-progress.ndjson";
+
+	private static final Map<String, Writer> writers = new HashMap<String, Writer>();
+
+	private static final Map<String, Integer> runs = new HashMap<String, Integer>();
+
+	private static final Set<String> truncated = new HashSet<String>();
+
+	private static final Json json = new Json();
+
+	private final File file;
+
+	public ScenarioProgress() {
+		this(new File(DEFAULT_FILE));
+	}
+
+	public ScenarioProgress(File file) {
+		this.file = file;
+	}
+
+	@Override
+	public void setEventPublisher(EventPublisher publisher) {
+		publisher.registerHandlerFor(TestRunStarted.class, new EventHandler<TestRunStarted>() {
+			@Override
+			public void receive(TestRunStarted event) {
+				runStarted();
+			}
+		});
+		publisher.registerHandlerFor(TestRunFinished.class, new EventHandler<TestRunFinished>() {
+			@Override
+			public void receive(TestRunFinished event) {
+				runFinished();
+			}
+		});
+		publisher.registerHandlerFor(TestCaseFinished.class, new EventHandler<TestCaseFinished>() {
+			@Override
+			public void receive(TestCaseFinished event) {
+				write(record(event.testCase, event.result));
+			}
+		});
+	}
+
+	private static Map<String, Object> record(TestCase testCase, Result result) {
+		List<String> tags = new ArrayList<String>();
+		for (PickleTag tag : testCase.getTags()) {
+			tags.add(tag.getName());
+		}
+		Map<String, Object> record = new LinkedHashMap<String, Object>();
+		record.put("timestamp", System.currentTimeMillis());
+		record.put("thread", Thread.currentThread().getName());
+		record.put("uri", testCase.getUri());
+		record.put("line", testCase.getLine());
+		record.put("name", testCase.getName());
+		record.put("tags", tags);
+		record.put("status", result.getStatus().lowerCaseName());
+		record.put("duration_ms", result.getDuration() == null ? 0 : result.getDuration() / 1_000_000);
+		if (result.getErrorMessage() != null) {
+			record.put("error", result.getErrorMessage());
+		}
+		return record;
+	}
+
+	private void runStarted() {
+		synchronized (writers) {
+			Integer count = runs.get(file.getPath());
+			runs.put(file.getPath(), count == null ? 1 : count + 1);
+			if (truncated.add(file.getPath())) {
+				try {
+					open(false);
+				} catch (IOException e) {
+					System.out.println("It wasn't possible to create the scenario progress: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	private void runFinished() {
+		synchronized (writers) {
+			Integer count = runs.get(file.getPath());
+			if (count != null && count > 1) {
+				runs.put(file.getPath(), count - 1);
+				return;
+			}
+			runs.remove(file.getPath());
+			Writer writer = writers.remove(file.getPath());
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (IOException e) {
+					System.out.println("It wasn't possible to close the scenario progress: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	private Writer open(boolean append) throws IOException {
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file, append), StandardCharsets.UTF_8);
+		Writer previous = writers.put(file.getPath(), writer);
+		if (previous != null) {
+			previous.close();
+		}
+		return writer;
+	}
+
+	private void write(Map<String, Object> record) {
+		// A record must not span more than one line.
+		StringBuilder line = new StringBuilder();
+		json.newOutput(line).setPrettyPrint(false).write(record);
+		synchronized (writers) {
+			try {
+				Writer writer = writers.get(file.getPath());
+				if (writer == null) {
+					writer = open(true);
+				}
+				writer.write(line.toString());
+				writer.write('\n');
+				writer.flush();
+			} catch (IOException e) {
+				System.out.println("It wasn't possible to write the scenario progress: " + e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package runner;
+
+import java.util.List;
+
+/**
+ * A scenario (or an example row of a scenario outline) of a feature file.
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class ScenarioRef {
+
+	private final String uri;
+	private final int line;
+	private final String name;
+	private final List<String> tags;
+
+	public ScenarioRef(String uri, int line, String name, List<String> tags) {
+		this.uri = uri;
+		this.line = line;
+		this.name = name;
+		this.tags = tags;
+	}
+
+	public String getUri() {
+		return uri;
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public List<String> getTags() {
+		return tags;
+	}
+
+	/**
+	 * @return The location accepted by Cucumber to run only this scenario. I.e:
+	 *         "src/main/java/features/Example.feature:6".
+	 */
+	public String getLocation() {
+		return uri + ":" + line;
+	}
+
+	@Override
+	public String toString() {
+		return getLocation() + " " + name;
+	}
+}
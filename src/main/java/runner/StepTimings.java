@@ -0,0 +1,56 @@
+package runner;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import cucumber.api.PickleStepTestStep;
+import cucumber.api.Result;
+import cucumber.api.event.ConcurrentEventListener;
+import cucumber.api.event.EventHandler;
+import cucumber.api.event.EventPublisher;
+import cucumber.api.event.TestStepFinished;
+
+/**
+ * Cucumber plugin that forwards the duration of every step to the listeners
+ * registered by the runners of this package. Usage: --plugin runner.StepTimings
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class StepTimings implements ConcurrentEventListener {
+
+	/**
+	 * Receives the steps finished in any thread.
+	 */
+	public interface Listener {
+		void stepFinished(String scenario, String step, long durationNanos, boolean passed);
+	}
+
+	private static final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+	public static void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	public static void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	@Override
+	public void setEventPublisher(EventPublisher publisher) {
+		publisher.registerHandlerFor(TestStepFinished.class, new EventHandler<TestStepFinished>() {
+			@Override
+			public void receive(TestStepFinished event) {
+				if (!(event.testStep instanceof PickleStepTestStep)) {
+					return;
+				}
+				String step = ((PickleStepTestStep) event.testStep).getStepText();
+				long duration = event.result.getDuration() == null ? 0 : event.result.getDuration();
+				boolean passed = event.result.is(Result.Type.PASSED);
+				for (Listener listener : listeners) {
+					listener.stepFinished(event.getTestCase().getName(), step, duration, passed);
+				}
+			}
+		});
+	}
+}
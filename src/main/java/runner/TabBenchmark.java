@@ -0,0 +1,129 @@
+package runner;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import core.ProcessTree;
+import core.ProjectProperties;
+import core.SharedBrowser;
+
+/**
+ * Runs the same scenarios twice with the same number of workers, first with one
+ * browser process per worker and then with the workers sharing browsers as tabs
+ * (see {@link SharedBrowser}), and compares throughput and memory. The memory
+ * is the resident memory of every process started by this JVM (driver servers
+ * and browsers), sampled every second.
+ * <p>
+ * The results are printed and appended to target/tab-benchmark.csv.
+ * <p>
+ * Usage: TabBenchmark [--features dir] [--tags expression] [--workers 4]
+ * [--tabs 4]
+ *
+ * @author Bruno Fraga
+ *
+ */
+public class TabBenchmark {
+
+	private static final String FILE = "target/tab-benchmark.csv";
+
+	private static final String HEADER = "timestamp,mode,workers,tabs_per_browser,max_browsers,scenarios,failed,seconds,scenarios_per_min,peak_rss_mb,avg_rss_mb,peak_rss_per_worker_mb";
+
+	private TabBenchmark() {
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String features = ScenarioCatalog.FEATURES;
+		String tags = null;
+		int workers = 4;
+		int tabs = 0;
+		for (int i = 0; i < args.length - 1; i++) {
+			if ("--features".equals(args[i])) {
+				features = args[++i];
+			} else if ("--tags".equals(args[i])) {
+				tags = args[++i];
+			} else if ("--workers".equals(args[i])) {
+				workers = Integer.parseInt(args[++i]);
+			} else if ("--tabs".equals(args[i])) {
+				tabs = Integer.parseInt(args[++i]);
+			}
+		}
+		if (!ProcessTree.isSupported()) {
+			System.out.println("The memory can't be measured on this system (/proc not available)");
+		}
+		List<ScenarioRef> scenarios = ScenarioCatalog.load(features, tags);
+		ProjectProperties.WORKERS = workers;
+		ProjectProperties.HEADLESS = true;
+		measure("process-per-worker", scenarios, workers, 0);
+		measure("tabs", scenarios, workers, tabs > 1 ? tabs : workers);
+		System.exit(0);
+	}
+
+	private static void measure(String mode, List<ScenarioRef> scenarios, int workers, int tabs)
+			throws InterruptedException {
+		ProjectProperties.TABS_PER_BROWSER = tabs;
+		final int jvm = ProcessTree.currentPid();
+		final AtomicLong peakKb = new AtomicLong();
+		final AtomicLong totalKb = new AtomicLong();
+		final AtomicInteger samples = new AtomicInteger();
+		final AtomicInteger maxBrowsers = new AtomicInteger();
+		final boolean shared = tabs > 1;
+		ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+		sampler.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				if (ProcessTree.isSupported()) {
+					long rss = ProcessTree.descendantsResidentKb(jvm);
+					peakKb.set(Math.max(peakKb.get(), rss));
+					totalKb.addAndGet(rss);
+					samples.incrementAndGet();
+				}
+				if (shared) {
+					maxBrowsers.set(Math.max(maxBrowsers.get(), SharedBrowser.getBrowserCount()));
+				}
+			}
+		}, 0, 1, TimeUnit.SECONDS);
+
+		long start = System.nanoTime();
+		List<ScenarioRef> failed;
+		try {
+			failed = ParallelRunner.run(scenarios);
+		} finally {
+			sampler.shutdownNow();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		long peakMb = peakKb.get() / 1024;
+		long avgMb = samples.get() == 0 ? 0 : totalKb.get() / samples.get() / 1024;
+		int browsers = shared ? maxBrowsers.get() : Math.min(workers, scenarios.size());
+		String line = System.currentTimeMillis() + "," + mode + "," + workers + "," + tabs + "," + browsers + ","
+				+ scenarios.size() + "," + failed.size() + "," + String.format(Locale.ROOT, "%.1f", seconds) + ","
+				+ String.format(Locale.ROOT, "%.2f", scenarios.size() * 60 / seconds) + "," + peakMb + "," + avgMb + ","
+				+ peakMb / Math.max(1, workers);
+		System.out.println(String.format(Locale.ROOT, "%s: %d scenario(s) in %.1f s (%.2f/min), %d browser(s), peak %d MB, avg %d MB",
+				mode, scenarios.size(), seconds, scenarios.size() * 60 / seconds, browsers, peakMb, avgMb));
+		write(line);
+	}
+
+	private static void write(String line) {
+		File file = new File(FILE);
+		boolean header = !file.exists();
+		file.getParentFile().mkdirs();
+		try (PrintWriter writer = new PrintWriter(new FileWriter(file, true))) {
+			if (header) {
+				writer.println(HEADER);
+			}
+			writer.println(line);
+		} catch (IOException e) {
+			System.out.println("It wasn't possible to write the benchmark: " + e.getMessage());
+		}
+	}
+}
@@ -10,7 +10,8 @@ import io.cucumber.junit.CucumberOptions.SnippetType;
 @RunWith(Cucumber.class)
 @CucumberOptions(features = "src/main/java/features",
 					glue = {"steps"},
-					plugin = {"pretty", "junit:target/cucumber-results.xml"},
+					plugin = {"pretty", "junit:target/cucumber-results.xml", "json:target/cucumber.json",
+							"runner.ScenarioProgress:target/cucumber-progress.ndjson", "runner.ImpactRecorder"},
 					monochrome = true,
 					snippets = SnippetType.CAMELCASE)
 public class TestRunner {
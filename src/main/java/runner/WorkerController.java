@@ -0,0 +1,234 @@
+package runner;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import core.ProcessTree;
+import core.ProjectProperties;
+
+/**
+ * Decides how many scenarios {@link ParallelRunner} runs at the same time. It
+ * starts from the cores and memory of the machine and, at each interval,
+ * compares the throughput and the step latency of the last interval with the
+ * previous ones: it adds a worker while the throughput improves and removes one
+ * when the latency degrades, the CPU is saturated or the memory is running out.
+ * Every decision is written to {@link ProjectProperties#WORKER_DECISIONS_FILE}.
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class WorkerController implements StepTimings.Listener {
+
+	private static final String HEADER = "timestamp,workers_before,workers_after,scenarios,throughput_per_min,"
+			+ "step_latency_ms,latency_index,cpu_load,browser_rss_mb,available_mb,decision,reason";
+
+	/**
+	 * Latency index considered a degradation: the steps of the interval took 50%
+	 * more than they usually take.
+	 */
+	private static final double LATENCY_DEGRADATION = 1.5;
+
+	/** Weight of a new duration in the usual duration of a step. */
+	private static final double STEP_AVERAGE_WEIGHT = 0.1;
+
+	/** Throughput increase considered an improvement. */
+	private static final double THROUGHPUT_GAIN = 1.05;
+
+	private static final double CPU_SATURATION = 0.9;
+
+	private int maxWorkers;
+	private int workers;
+
+	private long windowStart = System.nanoTime();
+	private int windowScenarios;
+	private long windowStepNanos;
+	private int windowSteps;
+	private double windowRatios;
+	private int windowCompared;
+
+	private final Map<String, Double> stepAverages = new HashMap<String, Double>();
+	private double lastThroughput = -1;
+	private String lastDecision = "start";
+
+	public WorkerController() {
+		int cores = Runtime.getRuntime().availableProcessors();
+		int byMemory = (int) Math.max(1, availableMb() * 0.8 / workerMemoryMb());
+		maxWorkers = Math.max(1, Math.min(cores * 2, byMemory));
+		workers = Math.max(1, Math.min(cores, byMemory) / 2);
+		log(workers, workers, 0, 0, cpuLoad(), browserRssMb(), availableMb(), "start",
+				cores + " core(s), room for " + byMemory + " browser(s) in memory");
+	}
+
+	/**
+	 * @return The number of workers that must run now.
+	 */
+	public synchronized int getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * Must be called when a worker finishes a scenario.
+	 */
+	public synchronized void scenarioFinished() {
+		windowScenarios++;
+	}
+
+	@Override
+	public synchronized void stepFinished(String scenario, String step, long durationNanos, boolean passed) {
+		windowStepNanos += durationNanos;
+		windowSteps++;
+		// Each step is compared with its own usual duration, so the mix of scenarios
+		// of the interval doesn't change the index.
+		Double average = stepAverages.get(step);
+		if (average == null) {
+			stepAverages.put(step, (double) durationNanos);
+		} else {
+			if (average > 0) {
+				windowRatios += durationNanos / average;
+				windowCompared++;
+			}
+			stepAverages.put(step, average * (1 - STEP_AVERAGE_WEIGHT) + durationNanos * STEP_AVERAGE_WEIGHT);
+		}
+	}
+
+	/**
+	 * Closes the current interval and decides the number of workers of the next
+	 * one.
+	 * 
+	 * @return The number of workers that must run now.
+	 */
+	public synchronized int adjust() {
+		double minutes = (System.nanoTime() - windowStart) / 60e9;
+		double throughput = windowScenarios / minutes;
+		double latencyIndex = windowCompared == 0 ? 1 : windowRatios / windowCompared;
+		double cpu = cpuLoad();
+		long rssMb = browserRssMb();
+		long availableMb = availableMb();
+		int before = workers;
+
+		String decision;
+		String reason;
+		if (windowScenarios == 0) {
+			decision = "hold";
+			reason = "no scenario finished in the interval";
+		} else if (cpu > CPU_SATURATION && workers > 1) {
+			decision = "down";
+			reason = "cpu saturated";
+		} else if (availableMb >= 0 && availableMb < workerMemoryMb() && workers > 1) {
+			decision = "down";
+			reason = "memory running out";
+		} else if (latencyIndex > LATENCY_DEGRADATION && workers > 1) {
+			decision = "down";
+			reason = "step latency degraded";
+		} else if ("up".equals(lastDecision) && throughput < lastThroughput * THROUGHPUT_GAIN && workers > 1) {
+			decision = "down";
+			reason = "last increase did not improve the throughput";
+			maxWorkers = workers - 1;
+		} else if (!"down".equals(lastDecision) && workers < maxWorkers
+				&& (availableMb < 0 || availableMb > workerMemoryMb())) {
+			decision = "up";
+			reason = "room for another browser";
+		} else {
+			decision = "hold";
+			reason = workers >= maxWorkers ? "maximum reached" : "stable";
+		}
+
+		if ("up".equals(decision)) {
+			workers++;
+		} else if ("down".equals(decision)) {
+			workers--;
+		}
+		if (windowScenarios > 0) {
+			lastThroughput = throughput;
+			lastDecision = decision;
+		}
+		log(before, workers, windowScenarios, throughput, cpu, rssMb, availableMb, decision, reason);
+
+		windowStart = System.nanoTime();
+		windowScenarios = 0;
+		windowStepNanos = 0;
+		windowSteps = 0;
+		windowRatios = 0;
+		windowCompared = 0;
+		return workers;
+	}
+
+	private void log(int before, int after, int scenarios, double throughput, double cpu, long rssMb,
+			long availableMb, String decision, String reason) {
+		double latencyMs = windowSteps == 0 ? 0 : windowStepNanos / 1e6 / windowSteps;
+		double latencyIndex = windowCompared == 0 ? 1 : windowRatios / windowCompared;
+		String line = String.format(Locale.ROOT, "%d,%d,%d,%d,%.2f,%.1f,%.2f,%.2f,%d,%d,%s,\"%s\"",
+				System.currentTimeMillis(), before, after, scenarios, throughput, latencyMs, latencyIndex, cpu, rssMb,
+				availableMb, decision, reason);
+		System.out.println("Workers " + decision + ": " + before + " -> " + after + " - " + reason);
+		File file = new File(ProjectProperties.WORKER_DECISIONS_FILE);
+		boolean header = !file.exists();
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		try (PrintWriter writer = new PrintWriter(new FileWriter(file, true))) {
+			if (header) {
+				writer.println(HEADER);
+			}
+			writer.println(line);
+		} catch (IOException e) {
+			System.out.println("It wasn't possible to write the worker decision: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return The CPU load of the machine between 0 and 1, or -1 if unknown.
+	 */
+	static double cpuLoad() {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean) {
+			double load = ((com.sun.management.OperatingSystemMXBean) os).getSystemCpuLoad();
+			if (load >= 0) {
+				return load;
+			}
+		}
+		double average = os.getSystemLoadAverage();
+		return average < 0 ? -1 : average / os.getAvailableProcessors();
+	}
+
+	/**
+	 * @return The memory available in the machine (MB).
+	 */
+	static long availableMb() {
+		long kb = ProcessTree.availableMemoryKb();
+		if (kb >= 0) {
+			return kb / 1024;
+		}
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean) {
+			return ((com.sun.management.OperatingSystemMXBean) os).getFreePhysicalMemorySize() / (1024 * 1024);
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The resident memory (MB) of every process started by this JVM, or
+	 *         -1 where /proc isn't available.
+	 */
+	static long browserRssMb() {
+		if (!ProcessTree.isSupported()) {
+			return -1;
+		}
+		return ProcessTree.descendantsResidentKb(ProcessTree.currentPid()) / 1024;
+	}
+
+	/**
+	 * @return The memory a new worker needs: a browser, or a share of it when the
+	 *         workers run as tabs of the same browser.
+	 */
+	private static long workerMemoryMb() {
+		return ProjectProperties.BROWSER_MEMORY_ESTIMATE_MB / Math.max(1, ProjectProperties.TABS_PER_BROWSER);
+	}
+}
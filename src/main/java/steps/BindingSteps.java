@@ -2,14 +2,22 @@ package steps;
 
 import static core.DriverFactory.getDriver;
 
+import java.io.File;
 import java.io.IOException;
 
+import core.BrowserLogCollector;
 import core.DriverFactory;
+import core.MemoryWatchdog;
 import core.ProjectProperties;
 import io.cucumber.core.api.Scenario;
 import io.cucumber.java.After;
+import io.cucumber.java.AfterStep;
 import io.cucumber.java.Before;
+import util.HealingBy;
+import util.LocatorProfiler;
+import util.ScenarioBudget;
 import util.ScreenshotManager;
+import util.ScriptLibrary;
 
 /**
  * This class is where you can define the behavior of each scenario. 
@@ -25,6 +33,13 @@ public class BindingSteps {
 	@Before
 	public void init(Scenario scenario) {
 		this.scenario = scenario;
+		BrowserLogCollector.startScenario(scenario.getName());
+		ScenarioBudget.startScenario(scenario.getName(), scenario.getSourceTagNames());
+	}
+	
+	@AfterStep
+	public void afterStep() {
+		BrowserLogCollector.afterStep();
 	}
 	
 	@Before("@First")
@@ -37,10 +52,25 @@ public class BindingSteps {
 		new ScreenshotManager();
 		ScreenshotManager.captureFullPageScreenshotNamedByScenario(getDriver(), scenario);
 		System.out.println(scenario.toString());
+		File logs = BrowserLogCollector.endScenario();
+		if (logs != null && scenario.isFailed()) {
+			System.out.println("Browser logs: " + logs.getPath());
+		}
+		MemoryWatchdog.afterScenario(scenario.getName());
+		String budget = ScenarioBudget.endScenario(scenario.getStatus().name().toLowerCase());
+		if (budget != null) {
+			System.out.println(budget);
+		}
 	}
 	
 	@After(value = "@Last", order = 0)
 	public void finish() {
+		System.out.println(ScriptLibrary.getStatistics());
+		System.out.println(HealingBy.getStatistics());
+		if (LocatorProfiler.isEnabled()) {
+			System.out.println(LocatorProfiler.getStatistics());
+			LocatorProfiler.save();
+		}
 		if(ProjectProperties.CLOSE_BROWSER) {
 			DriverFactory.killDriver();
 		}
@@ -3,9 +3,12 @@ package steps;
 import static core.DriverFactory.getDriver;
 import static org.junit.Assert.assertEquals;
 
+import java.io.IOException;
+
 import io.cucumber.java.en.Given;
 import io.cucumber.java.en.Then;
 import pageObject.ExamplePage;
+import runner.FixtureServer;
 
 /**
  * This class is an example of steps package usage.
@@ -37,5 +40,16 @@ public class ExampleSteps extends ExamplePage{
 		assertEquals("YouTube", getDriver().getTitle());
 	}
 
+	@Given("que acesso a pagina local de exemplo")
+	public void queAcessoAPaginaLocalDeExemplo() throws IOException {
+		FixtureServer.useFixtures();
+		changeUrl("/index.html");
+	}
+
+	@Then("valido se a pagina acessada e a pagina local de exemplo")
+	public void validoSeAPaginaAcessadaEAPaginaLocalDeExemplo() {
+		assertEquals("Fixture", getDriver().getTitle());
+	}
+
 
 }
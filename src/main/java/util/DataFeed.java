@@ -0,0 +1,349 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.openqa.selenium.json.Json;
+
+import core.ProjectProperties;
+
+/**
+ * Streams the rows of a CSV (with header) or JSON-lines (.jsonl) file to the
+ * steps, one row at a time, so a scenario can be driven over a large dataset
+ * without an Examples table and without loading the file into memory.
+ * <p>
+ * The rows are split among the shards of the run: row n belongs to the shard
+ * n % DATA_PARTITIONS == DATA_PARTITION (I.e: one per machine or JVM). Inside a
+ * JVM the threads that open the same file share one reader, so parallel
+ * workers take the next row as they finish the previous one.
+ * <p>
+ * Each row must be marked with {@link #done(Row)} when it was processed. The
+ * last row before which every row is done is written to a checkpoint file
+ * (target/data-checkpoints), and opening the file again after a crash resumes
+ * from there. The checkpoint is removed when every row of the shard is done.
+ *
+ * <pre>
+ * DataFeed feed = DataFeed.open("src/main/resources/data/users.csv");
+ * for (DataFeed.Row row = feed.next(); row != null; row = feed.next()) {
+ * 	utils.sendKeys(By.id("user"), row.get("user"));
+ * 	...
+ * 	feed.done(row);
+ * }
+ * </pre>
+ *
+ * @author Bruno Fraga
+ *
+ */
+public class DataFeed {
+
+	private static final String CHECKPOINTS = "target/data-checkpoints";
+
+	private static final Json json = new Json();
+
+	private static final Map<String, DataFeed> feeds = new HashMap<String, DataFeed>();
+
+	private final File file;
+	private final boolean csv;
+	private final int partition;
+	private final int partitions;
+	private final File checkpoint;
+	private BufferedReader reader;
+	private List<String> header;
+	private long read;
+	private long completed;
+	private long saved;
+	private final TreeSet<Long> completedAhead = new TreeSet<Long>();
+	private boolean exhausted;
+	private int open;
+
+	/**
+	 * A row of the file.
+	 */
+	public static class Row {
+		private final long number;
+		private final Map<String, Object> values;
+
+		private Row(long number, Map<String, Object> values) {
+			this.number = number;
+			this.values = values;
+		}
+
+		/**
+		 * @return The position of the row in the file, starting at 1 (the CSV header
+		 *         isn't counted).
+		 */
+		public long getNumber() {
+			return number;
+		}
+
+		/**
+		 * @param column Name of the column (CSV) or of the field (JSON).
+		 * @return The value as text, or null when the row doesn't have it.
+		 */
+		public String get(String column) {
+			Object value = values.get(column);
+			return value == null ? null : String.valueOf(value);
+		}
+
+		public Map<String, Object> getValues() {
+			return Collections.unmodifiableMap(values);
+		}
+
+		@Override
+		public String toString() {
+			return "row " + number + " " + values;
+		}
+	}
+
+	private DataFeed(File file, int partition, int partitions) {
+		this.file = file;
+		this.csv = !file.getName().endsWith(".jsonl") && !file.getName().endsWith(".ndjson");
+		this.partition = partition;
+		this.partitions = partitions;
+		this.checkpoint = new File(CHECKPOINTS,
+				file.getName() + (partitions > 1 ? "." + partition + "-of-" + partitions : "") + ".checkpoint");
+	}
+
+	/**
+	 * Opens a data file for the shard of this run (ProjectProperties.DATA_PARTITION
+	 * and DATA_PARTITIONS). Threads opening the same file share the reader.
+	 *
+	 * @param path Path of the .csv or .jsonl file.
+	 * @return The feed, positioned after the last checkpoint.
+	 * @throws IOException If the file can't be read.
+	 */
+	public static DataFeed open(String path) throws IOException {
+		return open(path, ProjectProperties.DATA_PARTITION, ProjectProperties.DATA_PARTITIONS);
+	}
+
+	/**
+	 * Opens a data file for a specific shard.
+	 *
+	 * @param path       Path of the .csv or .jsonl file.
+	 * @param partition  The shard, from 0 to partitions - 1.
+	 * @param partitions Number of shards.
+	 * @return The feed, positioned after the last checkpoint.
+	 * @throws IOException If the file can't be read.
+	 */
+	public static DataFeed open(String path, int partition, int partitions) throws IOException {
+		if (partitions < 1 || partition < 0 || partition >= partitions) {
+			throw new IllegalArgumentException("Invalid shard " + partition + " of " + partitions);
+		}
+		File file = new File(path).getCanonicalFile();
+		String key = file.getPath() + "#" + partition + "/" + partitions;
+		synchronized (feeds) {
+			DataFeed feed = feeds.get(key);
+			if (feed == null) {
+				feed = new DataFeed(file, partition, partitions);
+				feed.start();
+				feeds.put(key, feed);
+			}
+			feed.open++;
+			return feed;
+		}
+	}
+
+	/**
+	 * @return The next row of this shard that wasn't done yet, or null when there
+	 *         are no more rows.
+	 * @throws IOException If the file can't be read.
+	 */
+	public synchronized Row next() throws IOException {
+		while (!exhausted) {
+			Map<String, Object> values = readRecord();
+			if (values == null) {
+				exhausted = true;
+				break;
+			}
+			long number = ++read;
+			if ((number - 1) % partitions == partition && number > completed) {
+				return new Row(number, values);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Marks a row as processed. The checkpoint moves forward when every row before
+	 * it is done too, and is written every DATA_CHECKPOINT_INTERVAL rows. A row
+	 * already behind the checkpoint (I.e: marked twice) is ignored.
+	 *
+	 * @param row The row.
+	 */
+	public synchronized void done(Row row) {
+		if (row.number <= completed) {
+			return;
+		}
+		completedAhead.add(row.number);
+		long next = nextOfShard(completed);
+		while (!completedAhead.isEmpty() && completedAhead.first() == next) {
+			completedAhead.pollFirst();
+			completed = next;
+			next = nextOfShard(completed);
+		}
+		if (completed - saved >= (long) ProjectProperties.DATA_CHECKPOINT_INTERVAL * partitions) {
+			save();
+		}
+	}
+
+	/**
+	 * Releases the feed. When the last thread closes it, the checkpoint is written
+	 * (or removed if every row of the shard was done) and the file is closed.
+	 *
+	 * @throws IOException If the file can't be closed.
+	 */
+	public void close() throws IOException {
+		synchronized (feeds) {
+			if (--open > 0) {
+				return;
+			}
+			feeds.values().remove(this);
+		}
+		synchronized (this) {
+			if (exhausted && completedAhead.isEmpty() && nextOfShard(completed) > read) {
+				checkpoint.delete();
+			} else {
+				save();
+			}
+			reader.close();
+		}
+	}
+
+	/**
+	 * @return The last row before which every row of this shard is done.
+	 */
+	public synchronized long getCompleted() {
+		return completed;
+	}
+
+	private void start() throws IOException {
+		if (checkpoint.isFile()) {
+			completed = Long.parseLong(
+					new String(Files.readAllBytes(checkpoint.toPath()), StandardCharsets.UTF_8).trim());
+			saved = completed;
+			System.out.println("Resuming " + file.getName() + " after row " + completed);
+		}
+		reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+		if (csv) {
+			List<String> names = readCsv();
+			header = names == null ? Collections.<String>emptyList() : names;
+		}
+	}
+
+	private long nextOfShard(long row) {
+		// Rows are numbered from 1; row n belongs to shard (n - 1) % partitions.
+		long next = row + 1;
+		while ((next - 1) % partitions != partition) {
+			next++;
+		}
+		return next;
+	}
+
+	/**
+	 * Writes the checkpoint to a temporary file and moves it over the old one, so
+	 * a crash while writing never leaves an empty or partial checkpoint.
+	 */
+	private void save() {
+		try {
+			checkpoint.getParentFile().mkdirs();
+			File temp = new File(checkpoint.getPath() + ".tmp");
+			Files.write(temp.toPath(), Long.toString(completed).getBytes(StandardCharsets.UTF_8));
+			try {
+				Files.move(temp.toPath(), checkpoint.toPath(), StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), checkpoint.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			saved = completed;
+		} catch (IOException e) {
+			System.out.println("It wasn't possible to write the checkpoint of " + file.getName() + ": "
+					+ e.getMessage());
+		}
+	}
+
+	private Map<String, Object> readRecord() throws IOException {
+		if (!csv) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if (!line.trim().isEmpty()) {
+					return json.toType(line, Json.MAP_TYPE);
+				}
+			}
+			return null;
+		}
+		List<String> fields = readCsv();
+		if (fields == null) {
+			return null;
+		}
+		Map<String, Object> values = new LinkedHashMap<String, Object>();
+		for (int i = 0; i < header.size() && i < fields.size(); i++) {
+			values.put(header.get(i), fields.get(i));
+		}
+		return values;
+	}
+
+	/**
+	 * Reads one CSV record: fields separated by commas, optionally between double
+	 * quotes (which may contain commas, line breaks and "" for a quote). Blank
+	 * lines are skipped.
+	 */
+	private List<String> readCsv() throws IOException {
+		String line = reader.readLine();
+		while (line != null && line.isEmpty()) {
+			line = reader.readLine();
+		}
+		if (line == null) {
+			return null;
+		}
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		int i = 0;
+		while (true) {
+			if (i == line.length()) {
+				if (!quoted) {
+					break;
+				}
+				String more = reader.readLine();
+				if (more == null) {
+					break;
+				}
+				field.append('\n');
+				line = more;
+				i = 0;
+				continue;
+			}
+			char c = line.charAt(i++);
+			if (quoted) {
+				if (c == '"' && i < line.length() && line.charAt(i) == '"') {
+					field.append('"');
+					i++;
+				} else if (c == '"') {
+					quoted = false;
+				} else {
+					field.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+}
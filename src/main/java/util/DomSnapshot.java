@@ -0,0 +1,215 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import core.DriverFactory;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.jsoup.select.Elements;
+import org.junit.Assert;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+
+/**
+ * This class is a local copy of the page (or of a part of it) taken with a
+ * single driver command. Every query runs against the copy, so many assertions
+ * on the same page cost no further round-trips.
+ * <p>
+ * Staleness: a snapshot is a picture of the DOM at the moment it was captured
+ * and it never updates itself. Use {@link #isStale()} (one round-trip) to know
+ * if the page navigated or the captured subtree changed since then, and
+ * {@link #refresh()} to capture it again.
+ * <p>
+ * Differences from the live element methods: texts are the element text
+ * content with whitespace collapsed (hidden descendants included), visibility
+ * is the one computed by the browser at capture time and the attribute "value"
+ * holds the current value of form fields.
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class DomSnapshot {
+
+	private static final String VISIBLE = "data-fw-visible";
+
+	private final By scope;
+	private final long id;
+	private final String url;
+	private final long capturedAt;
+	private final Document document;
+
+	private DomSnapshot(By scope, long id, String url, String xml) {
+		this.scope = scope;
+		this.id = id;
+		this.url = url;
+		this.capturedAt = System.currentTimeMillis();
+		this.document = Jsoup.parse(xml, url, Parser.xmlParser());
+	}
+
+	/**
+	 * This method captures the whole page.
+	 * 
+	 * @return A snapshot of the current document.
+	 */
+	public static DomSnapshot capture() {
+		return capture(null);
+	}
+
+	/**
+	 * This method captures only the subtree of an element.
+	 * 
+	 * @param scope Locator of the root element of the snapshot. Null captures the
+	 *              whole page.
+	 * @return A snapshot of the element and its descendants.
+	 */
+	@SuppressWarnings("unchecked")
+	public static DomSnapshot capture(By scope) {
+		try {
+			WebElement root = scope == null ? null : DriverFactory.getUtils().find(scope);
+			Map<String, Object> result = (Map<String, Object>) ScriptLibrary.call("snapshot", root);
+			return new DomSnapshot(scope, ((Number) result.get("id")).longValue(), (String) result.get("url"),
+					(String) result.get("xml"));
+		} catch (Exception e) {
+			Assert.fail("It wasn't possible to capture the DOM snapshot: " + (scope == null ? "document" : scope)
+					+ "\n-----==========-----\nMessage: " + e.getMessage() + "\n-----==========-----");
+		}
+		return null;
+	}
+
+	/**
+	 * This method checks if the page navigated or if the captured subtree changed
+	 * after the capture. It costs one round-trip.
+	 * 
+	 * @return True if the snapshot no longer reflects the page, False if it does.
+	 */
+	public boolean isStale() {
+		return !Boolean.FALSE.equals(ScriptLibrary.call("snapshotChanged", id));
+	}
+
+	/**
+	 * This method captures the same scope again and releases the observer of this
+	 * snapshot.
+	 * 
+	 * @return A new snapshot of the same scope.
+	 */
+	public DomSnapshot refresh() {
+		release();
+		return capture(scope);
+	}
+
+	/**
+	 * This method stops the browser from tracking changes for this snapshot. After
+	 * it, {@link #isStale()} always returns True.
+	 */
+	public void release() {
+		ScriptLibrary.call("releaseSnapshot", id);
+	}
+
+	/**
+	 * This method selects the elements of the snapshot by a CSS selector.
+	 * 
+	 * @param cssQuery CSS selector.
+	 * @return The matching elements (may be empty).
+	 */
+	public Elements select(String cssQuery) {
+		return document.select(cssQuery);
+	}
+
+	/**
+	 * This method selects the elements of the snapshot by a XPath expression.
+	 * 
+	 * @param xpath XPath expression.
+	 * @return The matching elements (may be empty).
+	 */
+	public Elements selectXpath(String xpath) {
+		return document.selectXpath(xpath);
+	}
+
+	/**
+	 * This method obtains the text of the first element that matches a CSS selector.
+	 * 
+	 * @param cssQuery CSS selector.
+	 * @return The text of the element, or null if nothing matches.
+	 */
+	public String getText(String cssQuery) {
+		Element element = document.selectFirst(cssQuery);
+		return element == null ? null : element.text();
+	}
+
+	/**
+	 * This method obtains the texts of all elements that match a CSS selector.
+	 * 
+	 * @param cssQuery CSS selector.
+	 * @return A list with one text per element.
+	 */
+	public List<String> getTexts(String cssQuery) {
+		List<String> texts = new ArrayList<String>();
+		for (Element element : document.select(cssQuery)) {
+			texts.add(element.text());
+		}
+		return texts;
+	}
+
+	/**
+	 * This method obtains an attribute of the first element that matches a CSS
+	 * selector.
+	 * 
+	 * @param cssQuery CSS selector.
+	 * @param att      Attribute name.
+	 * @return The attribute value, or null if the element or the attribute does not
+	 *         exist.
+	 */
+	public String getAttribute(String cssQuery, String att) {
+		Element element = document.selectFirst(cssQuery);
+		return element == null || !element.hasAttr(att) ? null : element.attr(att);
+	}
+
+	/**
+	 * This method checks if the first element that matches a CSS selector was
+	 * being displayed at capture time.
+	 * 
+	 * @param cssQuery CSS selector.
+	 * @return True if it was displayed, False if it wasn't or if nothing matches.
+	 */
+	public boolean isDisplayed(String cssQuery) {
+		Element element = document.selectFirst(cssQuery);
+		return element != null && "true".equals(element.attr(VISIBLE));
+	}
+
+	/**
+	 * This method counts the elements that match a CSS selector.
+	 * 
+	 * @param cssQuery CSS selector.
+	 * @return The number of elements.
+	 */
+	public int count(String cssQuery) {
+		return document.select(cssQuery).size();
+	}
+
+	/**
+	 * This method checks if at least one element matches a CSS selector.
+	 * 
+	 * @param cssQuery CSS selector.
+	 * @return True if an element exists, False if it's not.
+	 */
+	public boolean exists(String cssQuery) {
+		return document.selectFirst(cssQuery) != null;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public long getCapturedAt() {
+		return capturedAt;
+	}
+
+	public Document getDocument() {
+		return document;
+	}
+}
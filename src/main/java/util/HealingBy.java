@@ -0,0 +1,276 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.json.Json;
+
+import core.ProjectProperties;
+
+/**
+ * A locator with fallback strategies, tried in order (I.e: id, css, xpath,
+ * text) until one of them finds the element. It can be used anywhere a By is
+ * accepted, so every method of {@link Utils} and every wait heals it.
+ * <p>
+ * The strategy that found the element is remembered by the locator name and
+ * saved to LOCATOR_CACHE_FILE, so the next lookups, in this run and in the next
+ * ones, go straight to it. When it stops finding the element the strategies are
+ * tried again from the first one.
+ * <p>
+ * The locators that healed are written to HEALED_LOCATORS_FILE when the JVM
+ * exits, with the time the cache saved by not trying the broken strategies
+ * again.
+ *
+ * <pre>
+ * By login = new HealingBy("login.button", By.id("login"), By.cssSelector("form .submit"),
+ * 		By.xpath("//form//button[@type='submit']"), HealingBy.text("Entrar"));
+ * </pre>
+ *
+ * @author Bruno Fraga
+ *
+ */
+public class HealingBy extends By implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final Json json = new Json();
+
+	private static final Map<String, Winner> winners = load();
+
+	private static final Map<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(HealingBy::save));
+	}
+
+	private final String name;
+	private final List<By> strategies;
+
+	/**
+	 * @param name       Unique name of the locator, used as the cache key. I.e:
+	 *                   "login.button".
+	 * @param strategies The strategies, in the order they must be tried. The first
+	 *                   one is the primary locator.
+	 */
+	public HealingBy(String name, By... strategies) {
+		if (strategies.length == 0) {
+			throw new IllegalArgumentException("The locator " + name + " needs at least one strategy");
+		}
+		this.name = name;
+		this.strategies = Collections.unmodifiableList(Arrays.asList(strategies));
+	}
+
+	/**
+	 * @param text The visible text of the element, ignoring extra spaces.
+	 * @return A strategy that finds the elements by their text.
+	 */
+	public static By text(String text) {
+		return By.xpath("//*[normalize-space(text())=" + xpathLiteral(text.trim()) + "]");
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public List<By> getStrategies() {
+		return strategies;
+	}
+
+	@Override
+	public List<WebElement> findElements(SearchContext context) {
+		Stats stat = stats.computeIfAbsent(name, key -> new Stats());
+		stat.lookups.incrementAndGet();
+		Winner cached = winners.get(name);
+		int first = cached != null && cached.matches(this) ? cached.index : 0;
+
+		long start = System.nanoTime();
+		List<WebElement> found = attempt(context, first);
+		if (!found.isEmpty()) {
+			if (first > 0) {
+				stat.cacheHits.incrementAndGet();
+				stat.savedNanos.addAndGet(cached.costNanos);
+			}
+			return found;
+		}
+
+		// Only the broken strategies tried before the one that works count as cost.
+		long failed = first == 0 ? System.nanoTime() - start : 0;
+		for (int i = 0; i < strategies.size(); i++) {
+			if (i == first) {
+				continue;
+			}
+			start = System.nanoTime();
+			found = attempt(context, i);
+			if (!found.isEmpty()) {
+				if (i == 0) {
+					winners.remove(name);
+				} else {
+					winners.put(name, new Winner(i, strategies.get(i).toString(), failed));
+					stat.healed.incrementAndGet();
+					System.out.println("Locator " + name + " healed: " + strategies.get(0) + " -> " + strategies.get(i));
+				}
+				return found;
+			}
+			failed += System.nanoTime() - start;
+		}
+		return found;
+	}
+
+	@Override
+	public WebElement findElement(SearchContext context) {
+		List<WebElement> found = findElements(context);
+		if (found.isEmpty()) {
+			throw new NoSuchElementException("Cannot locate an element using " + toString());
+		}
+		return found.get(0);
+	}
+
+	@Override
+	public String toString() {
+		return "HealingBy " + name + ": " + strategies;
+	}
+
+	/**
+	 * This method returns a summary of the healed locators, to be printed at the
+	 * end of the run.
+	 *
+	 * @return A line with the healed locators and the time saved by the cache.
+	 */
+	public static String getStatistics() {
+		long healed = 0;
+		long hits = 0;
+		long saved = 0;
+		for (Stats stat : stats.values()) {
+			healed += stat.healed.get() > 0 || stat.cacheHits.get() > 0 ? 1 : 0;
+			hits += stat.cacheHits.get();
+			saved += stat.savedNanos.get();
+		}
+		return String.format("Healing locators: %d healed, %d lookup(s) went straight to the healed strategy, %.1f ms saved",
+				healed, hits, saved / 1e6);
+	}
+
+	private List<WebElement> attempt(SearchContext context, int index) {
+		try {
+			return strategies.get(index).findElements(context);
+		} catch (RuntimeException e) {
+			// An invalid selector on this page counts as a broken strategy.
+			return Collections.emptyList();
+		}
+	}
+
+	private static String xpathLiteral(String text) {
+		if (!text.contains("'")) {
+			return "'" + text + "'";
+		}
+		if (!text.contains("\"")) {
+			return "\"" + text + "\"";
+		}
+		return "concat('" + text.replace("'", "', \"'\", '") + "')";
+	}
+
+	private static Map<String, Winner> load() {
+		Map<String, Winner> entries = new ConcurrentHashMap<String, Winner>();
+		File file = new File(ProjectProperties.LOCATOR_CACHE_FILE);
+		if (!file.isFile()) {
+			return entries;
+		}
+		try {
+			Map<String, Map<String, Object>> content = json
+					.toType(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), Json.MAP_TYPE);
+			for (Map.Entry<String, Map<String, Object>> entry : content.entrySet()) {
+				Map<String, Object> value = entry.getValue();
+				entries.put(entry.getKey(), new Winner(((Number) value.get("index")).intValue(),
+						(String) value.get("strategy"), ((Number) value.get("costNanos")).longValue()));
+			}
+		} catch (IOException | RuntimeException e) {
+			System.out.println("It wasn't possible to read the locator cache: " + e.getMessage());
+		}
+		return entries;
+	}
+
+	private static void save() {
+		Map<String, Object> cache = new TreeMap<String, Object>();
+		for (Map.Entry<String, Winner> entry : winners.entrySet()) {
+			Map<String, Object> value = new LinkedHashMap<String, Object>();
+			value.put("index", entry.getValue().index);
+			value.put("strategy", entry.getValue().strategy);
+			value.put("costNanos", entry.getValue().costNanos);
+			cache.put(entry.getKey(), value);
+		}
+		List<String> lines = new ArrayList<String>();
+		lines.add("locator,healed_to,lookups,healings,cache_hits,broken_strategies_ms,saved_ms");
+		for (Map.Entry<String, Stats> entry : new TreeMap<String, Stats>(stats).entrySet()) {
+			Stats stat = entry.getValue();
+			Winner winner = winners.get(entry.getKey());
+			if (winner == null && stat.healed.get() == 0) {
+				continue;
+			}
+			lines.add(String.format(Locale.ROOT, "%s,\"%s\",%d,%d,%d,%.1f,%.1f", entry.getKey(),
+					winner == null ? "" : winner.strategy.replace("\"", "\"\""), stat.lookups.get(),
+					stat.healed.get(), stat.cacheHits.get(), winner == null ? 0 : winner.costNanos / 1e6,
+					stat.savedNanos.get() / 1e6));
+		}
+		try {
+			write(ProjectProperties.LOCATOR_CACHE_FILE, json.toJson(cache));
+			if (lines.size() > 1) {
+				write(ProjectProperties.HEALED_LOCATORS_FILE, String.join("\n", lines) + "\n");
+			}
+		} catch (IOException e) {
+			System.out.println("It wasn't possible to write the locator cache: " + e.getMessage());
+		}
+	}
+
+	private static void write(String path, String content) throws IOException {
+		File file = new File(path);
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * The strategy that found the element last time and the time spent on the
+	 * broken strategies before it, which is what each lookup through the cache
+	 * saves. The strategy description is kept so an entry is ignored when the
+	 * locator definition changes.
+	 */
+	private static class Winner {
+		private final int index;
+		private final String strategy;
+		private final long costNanos;
+
+		private Winner(int index, String strategy, long costNanos) {
+			this.index = index;
+			this.strategy = strategy;
+			this.costNanos = costNanos;
+		}
+
+		private boolean matches(HealingBy locator) {
+			return index < locator.strategies.size() && locator.strategies.get(index).toString().equals(strategy);
+		}
+	}
+
+	private static class Stats {
+		private final AtomicLong lookups = new AtomicLong();
+		private final AtomicLong healed = new AtomicLong();
+		private final AtomicLong cacheHits = new AtomicLong();
+		private final AtomicLong savedNanos = new AtomicLong();
+	}
+}
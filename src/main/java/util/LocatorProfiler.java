@@ -0,0 +1,194 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.openqa.selenium.By;
+
+import core.ProjectProperties;
+
+/**
+ * Records how long each locator used by {@link Utils} takes to resolve, how
+ * many times it is used and how many elements it matches. Only enabled when
+ * ProjectProperties.PROFILE_LOCATORS is true.
+ * <p>
+ * At the end of the run ({@link #save()}, called by the @Last hook) and again
+ * when the JVM exits, the locators are written to LOCATOR_PROFILE_FILE, the most
+ * expensive first (total time), with the patterns that usually make a locator
+ * slow:
+ * <ul>
+ * <li>leading-descendant: XPath starting with "//", which walks the whole
+ * document;</li>
+ * <li>wildcard: "//*" or "*" steps, which test every element;</li>
+ * <li>text-predicate: text() or normalize-space(), which read the text of every
+ * candidate;</li>
+ * <li>contains: contains() or starts-with() predicates;</li>
+ * <li>deep-path: more than 4 steps (XPath) or combinators (CSS);</li>
+ * <li>positional: index predicates like [3] or :nth-child, which break and
+ * re-scan when the layout changes;</li>
+ * <li>css-candidate: an XPath with only tag, id and class steps, which a CSS
+ * selector resolves faster.</li>
+ * </ul>
+ *
+ * @author Bruno Fraga
+ *
+ */
+public class LocatorProfiler {
+
+	private static final Pattern XPATH_STEP = Pattern.compile("/+(?=[^/])");
+	private static final Pattern CSS_COMBINATOR = Pattern.compile("\\s*[>+~]\\s*|\\s+");
+	private static final Pattern XPATH_INDEX = Pattern.compile("\\[\\s*\\d+\\s*\\]|position\\(\\)|last\\(\\)");
+	private static final Pattern XPATH_SIMPLE = Pattern
+			.compile("(//?[a-zA-Z][\\w-]*(\\[@(id|class)\\s*=\\s*'[^']*'\\])?)+");
+
+	private static final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(LocatorProfiler::save));
+	}
+
+	private LocatorProfiler() {
+	}
+
+	public static boolean isEnabled() {
+		return ProjectProperties.PROFILE_LOCATORS;
+	}
+
+	/**
+	 * This method records one resolution of a locator.
+	 *
+	 * @param locator The locator.
+	 * @param nanos   Time spent resolving it.
+	 * @param matches Number of elements found (0 when it failed).
+	 */
+	public static void record(By locator, long nanos, int matches) {
+		Entry entry = entries.computeIfAbsent(locator.toString(), key -> new Entry());
+		entry.uses.incrementAndGet();
+		entry.nanos.addAndGet(nanos);
+		entry.matches.addAndGet(matches);
+		if (matches == 0) {
+			entry.misses.incrementAndGet();
+		}
+		long max;
+		do {
+			max = entry.maxNanos.get();
+		} while (nanos > max && !entry.maxNanos.compareAndSet(max, nanos));
+	}
+
+	/**
+	 * @param locator The locator description (By.toString()).
+	 * @return The slow patterns found in the locator, separated by spaces.
+	 */
+	public static String flags(String locator) {
+		List<String> flags = new ArrayList<String>();
+		if (locator.startsWith("By.xpath: ")) {
+			String xpath = locator.substring("By.xpath: ".length()).trim();
+			if (xpath.startsWith("//") || xpath.startsWith("(//")) {
+				flags.add("leading-descendant");
+			}
+			if (xpath.contains("//*") || xpath.contains("/*")) {
+				flags.add("wildcard");
+			}
+			if (xpath.contains("text()") || xpath.contains("normalize-space(")) {
+				flags.add("text-predicate");
+			}
+			if (xpath.contains("contains(") || xpath.contains("starts-with(")) {
+				flags.add("contains");
+			}
+			if (XPATH_STEP.split(xpath).length - 1 > 4) {
+				flags.add("deep-path");
+			}
+			if (XPATH_INDEX.matcher(xpath).find()) {
+				flags.add("positional");
+			}
+			if (XPATH_SIMPLE.matcher(xpath).matches()) {
+				flags.add("css-candidate");
+			}
+		} else if (locator.startsWith("By.cssSelector: ")) {
+			String css = locator.substring("By.cssSelector: ".length()).trim();
+			if (css.equals("*") || css.startsWith("* ") || css.contains(" * ") || css.contains("> *")) {
+				flags.add("wildcard");
+			}
+			if (CSS_COMBINATOR.split(css).length > 5) {
+				flags.add("deep-path");
+			}
+			if (css.contains(":nth-")) {
+				flags.add("positional");
+			}
+			if (css.contains("*=")) {
+				flags.add("contains");
+			}
+		}
+		return String.join(" ", flags);
+	}
+
+	/**
+	 * This method returns a summary of the profile, to be printed at the end of the
+	 * run.
+	 *
+	 * @return A line with the number of locators and the most expensive one.
+	 */
+	public static String getStatistics() {
+		List<Map.Entry<String, Entry>> ranked = ranked();
+		if (ranked.isEmpty()) {
+			return "Locator profile: nothing recorded";
+		}
+		Map.Entry<String, Entry> top = ranked.get(0);
+		return String.format("Locator profile: %d locator(s), most expensive %s (%d use(s), %.1f ms)", ranked.size(),
+				top.getKey(), top.getValue().uses.get(), top.getValue().nanos.get() / 1e6);
+	}
+
+	private static List<Map.Entry<String, Entry>> ranked() {
+		List<Map.Entry<String, Entry>> ranked = new ArrayList<Map.Entry<String, Entry>>(entries.entrySet());
+		Collections.sort(ranked, (a, b) -> Long.compare(b.getValue().nanos.get(), a.getValue().nanos.get()));
+		return ranked;
+	}
+
+	/**
+	 * This method writes the profile to LOCATOR_PROFILE_FILE, replacing the one
+	 * written before. Nothing is written if nothing was recorded.
+	 */
+	public static synchronized void save() {
+		if (entries.isEmpty()) {
+			return;
+		}
+		List<String> lines = new ArrayList<String>();
+		lines.add("rank,locator,uses,total_ms,avg_ms,max_ms,avg_matches,misses,flags");
+		int rank = 0;
+		for (Map.Entry<String, Entry> ranked : ranked()) {
+			Entry entry = ranked.getValue();
+			long uses = entry.uses.get();
+			lines.add(String.format(Locale.ROOT, "%d,\"%s\",%d,%.1f,%.2f,%.1f,%.1f,%d,%s", ++rank,
+					ranked.getKey().replace("\"", "\"\""), uses, entry.nanos.get() / 1e6,
+					entry.nanos.get() / 1e6 / uses, entry.maxNanos.get() / 1e6, (double) entry.matches.get() / uses,
+					entry.misses.get(), flags(ranked.getKey())));
+		}
+		File file = new File(ProjectProperties.LOCATOR_PROFILE_FILE);
+		try {
+			if (file.getParentFile() != null) {
+				file.getParentFile().mkdirs();
+			}
+			Files.write(file.toPath(), (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			System.out.println("It wasn't possible to write the locator profile: " + e.getMessage());
+		}
+	}
+
+	private static class Entry {
+		private final AtomicLong uses = new AtomicLong();
+		private final AtomicLong nanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+		private final AtomicLong matches = new AtomicLong();
+		private final AtomicLong misses = new AtomicLong();
+	}
+}
@@ -0,0 +1,176 @@
+package util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.support.ui.WebDriverWait;
+
+import core.ProjectProperties;
+
+/**
+ * A time budget for each scenario, shared by all of its waits. Without it the
+ * timeouts of the waits add up (I.e: each clickJS may wait 10 s), and a broken
+ * scenario holds its worker for minutes.
+ * <p>
+ * The budget is ProjectProperties.SCENARIO_BUDGET_S, or the value of a tag of
+ * the scenario like "@budget=90" (seconds), and counts from the start of the
+ * scenario. Every wait of {@link Utils} and every WebDriverWait created by
+ * {@link #webDriverWait(WebDriver, long)} is cut to the time left, and once
+ * nothing is left the waits throw a TimeoutException at once instead of
+ * waiting. Without a budget the waits keep their own timeouts.
+ * <p>
+ * At the end of each scenario a row is appended to SCENARIO_BUDGET_FILE, with
+ * the budget, the time used and how much of it was spent waiting.
+ *
+ * @author Bruno Fraga
+ *
+ */
+public class ScenarioBudget {
+
+	private static final String TAG = "@budget=";
+
+	private static final String HEADER = "timestamp,scenario,status,budget_s,used_s,used_pct,waited_s,waits,waits_cut,exhausted";
+
+	private static final ThreadLocal<Budget> budgets = new ThreadLocal<Budget>();
+
+	/**
+	 * The budget of the scenario running on a thread.
+	 */
+	private static class Budget {
+		private final String scenario;
+		private final long seconds;
+		private final long start = System.nanoTime();
+		private final long deadline;
+		private long waitedNanos;
+		private int waits;
+		private int cut;
+		private boolean exhausted;
+
+		private Budget(String scenario, long seconds) {
+			this.scenario = scenario;
+			this.seconds = seconds;
+			this.deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+		}
+	}
+
+	private ScenarioBudget() {
+	}
+
+	/**
+	 * Starts the budget of a scenario. Must be called before each scenario.
+	 *
+	 * @param scenario Name of the scenario.
+	 * @param tags     Tags of the scenario.
+	 */
+	public static void startScenario(String scenario, Collection<String> tags) {
+		long seconds = ProjectProperties.SCENARIO_BUDGET_S;
+		for (String tag : tags) {
+			if (tag.startsWith(TAG)) {
+				try {
+					seconds = Long.parseLong(tag.substring(TAG.length()));
+				} catch (NumberFormatException e) {
+					System.out.println("Invalid budget tag " + tag + " on " + scenario);
+				}
+			}
+		}
+		budgets.set(new Budget(scenario, seconds));
+	}
+
+	/**
+	 * Ends the budget of the scenario and adds it to the report. Must be called
+	 * after each scenario.
+	 *
+	 * @param status Status of the scenario (I.e: "passed").
+	 * @return A line about the budget if it ran out, otherwise null.
+	 */
+	public static String endScenario(String status) {
+		Budget budget = budgets.get();
+		budgets.remove();
+		if (budget == null) {
+			return null;
+		}
+		double used = (System.nanoTime() - budget.start) / 1e9;
+		write(String.format(Locale.ROOT, "%d,\"%s\",%s,%d,%.1f,%s,%.1f,%d,%d,%s", System.currentTimeMillis(),
+				budget.scenario.replace("\"", "\"\""), status, budget.seconds, used,
+				budget.seconds > 0 ? String.format(Locale.ROOT, "%.0f", used * 100 / budget.seconds) : "",
+				budget.waitedNanos / 1e9, budget.waits, budget.cut, budget.exhausted));
+		if (!budget.exhausted) {
+			return null;
+		}
+		return String.format(Locale.ROOT, "Scenario budget exhausted: %.1f s used of %d s", used, budget.seconds);
+	}
+
+	/**
+	 * Cuts a timeout to the budget left to the scenario.
+	 *
+	 * @param timeout The timeout the wait asked for (ms).
+	 * @return The timeout the wait can use (ms).
+	 * @throws TimeoutException If nothing is left of the budget.
+	 */
+	public static long clamp(long timeout) {
+		Budget budget = budgets.get();
+		if (budget == null || budget.seconds <= 0) {
+			return timeout;
+		}
+		budget.waits++;
+		long left = TimeUnit.NANOSECONDS.toMillis(budget.deadline - System.nanoTime());
+		if (left <= 0) {
+			budget.exhausted = true;
+			throw new TimeoutException("The budget of " + budget.seconds + " s of the scenario \"" + budget.scenario
+					+ "\" was used up, the wait was skipped");
+		}
+		if (left < timeout) {
+			budget.cut++;
+			return left;
+		}
+		return timeout;
+	}
+
+	/**
+	 * Adds the time of a wait to the report of the scenario.
+	 *
+	 * @param start When the wait started (System.nanoTime()).
+	 */
+	public static void waited(long start) {
+		Budget budget = budgets.get();
+		if (budget != null) {
+			budget.waitedNanos += System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * @param driver  The driver.
+	 * @param timeout The timeout (s).
+	 * @return A WebDriverWait whose timeout is cut to the budget left.
+	 * @throws TimeoutException If nothing is left of the budget.
+	 */
+	public static WebDriverWait webDriverWait(WebDriver driver, long timeout) {
+		WebDriverWait wait = new WebDriverWait(driver, timeout);
+		wait.withTimeout(Duration.ofMillis(clamp(TimeUnit.SECONDS.toMillis(timeout))));
+		return wait;
+	}
+
+	private static synchronized void write(String line) {
+		File file = new File(ProjectProperties.SCENARIO_BUDGET_FILE);
+		boolean header = !file.exists();
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		try (PrintWriter writer = new PrintWriter(new FileWriter(file, true))) {
+			if (header) {
+				writer.println(HEADER);
+			}
+			writer.println(line);
+		} catch (IOException e) {
+			System.out.println("It wasn't possible to write the scenario budget: " + e.getMessage());
+		}
+	}
+}
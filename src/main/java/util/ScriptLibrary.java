@@ -0,0 +1,99 @@
+package util;
+
+import static core.DriverFactory.getDriver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.openqa.selenium.JavascriptExecutor;
+
+/**
+ * This class provides the helper library (src/main/resources/js/framework-helpers.js)
+ * that is injected once per document. After that each call only sends a short
+ * invocation with the arguments. When the page navigates the library is gone,
+ * the invocation reports it and the library is injected again.
+ * 
+ * @author Bruno Fraga
+ *
+ */
+public class ScriptLibrary {
+
+	private static final String RESOURCE = "/js/framework-helpers.js";
+
+	private static final String MISSING = "__fw:missing";
+
+	private static final String SOURCE = load();
+
+	private static final Map<String, String> invocations = new ConcurrentHashMap<String, String>();
+
+	private static final AtomicLong injectionCount = new AtomicLong();
+	private static final AtomicLong injectionNanos = new AtomicLong();
+	private static final AtomicLong invocationCount = new AtomicLong();
+	private static final AtomicLong invocationBytes = new AtomicLong();
+
+	private ScriptLibrary() {
+	}
+
+	/**
+	 * This method calls a function from the helper library, injecting the library
+	 * first when the current document does not have it yet.
+	 * 
+	 * @param function Name of the function inside the library. I.e: "click".
+	 * @param args     The arguments that the function will receive.
+	 * @return The value returned by the function.
+	 */
+	public static Object call(String function, Object... args) {
+		JavascriptExecutor executor = (JavascriptExecutor) getDriver();
+		String invocation = invocations.computeIfAbsent(function, ScriptLibrary::invocationFor);
+		invocationCount.incrementAndGet();
+		invocationBytes.addAndGet(invocation.length());
+		Object result = executor.executeScript(invocation, args);
+		if (MISSING.equals(result)) {
+			inject(executor);
+			result = executor.executeScript(invocation, args);
+		}
+		return result;
+	}
+
+	/**
+	 * This method returns the statistics of the library usage, so the injection
+	 * cost can be compared with the size of the invocations sent.
+	 * 
+	 * @return A line with the injection and invocation counters.
+	 */
+	public static String getStatistics() {
+		long injections = injectionCount.get();
+		long calls = invocationCount.get();
+		return String.format(
+				"Script library: %d injection(s) of %d bytes in %.1f ms total, %d invocation(s) averaging %d bytes",
+				injections, SOURCE.length(), injectionNanos.get() / 1e6, calls,
+				calls == 0 ? 0 : invocationBytes.get() / calls);
+	}
+
+	private static void inject(JavascriptExecutor executor) {
+		long start = System.nanoTime();
+		executor.executeScript(SOURCE);
+		injectionNanos.addAndGet(System.nanoTime() - start);
+		injectionCount.incrementAndGet();
+	}
+
+	private static String invocationFor(String function) {
+		return "return window.__fw ? window.__fw." + function + ".apply(null, arguments) : '" + MISSING + "';";
+	}
+
+	private static String load() {
+		try (InputStream input = ScriptLibrary.class.getResourceAsStream(RESOURCE)) {
+			if (input == null) {
+				throw new IllegalStateException("Script library not found on the classpath: " + RESOURCE);
+			}
+			return IOUtils.toString(input, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			throw new IllegalStateException("It wasn't possible to read the script library: " + RESOURCE, e);
+		}
+	}
+}
@@ -4,19 +4,31 @@ import static core.DriverFactory.getDriver;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
+import core.BrowserContext;
+import core.DriverFactory;
+import core.ProjectProperties;
+import core.UsageRecorder;
+
 import org.junit.Assert;
 import org.openqa.selenium.Alert;
 import org.openqa.selenium.By;
 import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.Select;
-import org.openqa.selenium.support.ui.WebDriverWait;;
 
 /**
  * This class provides methods that interacts with web pages to executes tests.
+ * <p>
+ * Every public method starts with UsageRecorder.recordCaller(), so the impact
+ * index knows which scenarios called it (see runner.ImpactSelector). New public
+ * methods must do the same.
  * 
  * @author Bruno Fraga
  *
@@ -24,13 +36,55 @@ import org.openqa.selenium.support.ui.WebDriverWait;;
 public class Utils {
 
 	/**
-	 * This method provides the action to navigate by URL.
+	 * Returns the text of every selected option of the select in arguments[0].
+	 */
+	private static final String COMBO_SELECTED_TEXTS_SCRIPT = "var texts = [];"
+			+ "for (var i = 0; i < arguments[0].options.length; i++) {"
+			+ "  if (arguments[0].options[i].selected) { texts.push(arguments[0].options[i].text.trim()); }"
+			+ "}"
+			+ "return texts;";
+
+	/**
+	 * Returns index, text, value and selected flag of every option of the select in
+	 * arguments[0].
+	 */
+	private static final String COMBO_OPTIONS_SCRIPT = "var options = [];"
+			+ "for (var i = 0; i < arguments[0].options.length; i++) {"
+			+ "  var o = arguments[0].options[i];"
+			+ "  options.push({index: i, text: o.text.trim(), value: o.value, selected: o.selected});"
+			+ "}"
+			+ "return options;";
+
+	/**
+	 * Returns true if the select in arguments[0] has an option whose text is
+	 * arguments[1].
+	 */
+	private static final String COMBO_HAS_OPTION_SCRIPT = "for (var i = 0; i < arguments[0].options.length; i++) {"
+			+ "  if (arguments[0].options[i].text.trim() === arguments[1]) { return true; }"
+			+ "}"
+			+ "return false;";
+
+	/**
+	 * Clicks the first element of the list in arguments[0] whose text contains
+	 * arguments[1]. Returns true when an element was clicked.
+	 */
+	private static final String CLICK_ON_LIST_SCRIPT = "for (var i = 0; i < arguments[0].length; i++) {"
+			+ "  var text = arguments[0][i].innerText || arguments[0][i].textContent || '';"
+			+ "  if (text.indexOf(arguments[1]) !== -1) { arguments[0][i].click(); return true; }"
+			+ "}"
+			+ "return false;";
+
+	/**
+	 * This method provides the action to navigate by URL. URLs starting with "/"
+	 * are relative to ProjectProperties.BASE_URL.
 	 * 
 	 * @param url The URL that you want to navigate.
 	 */
 	public void goToUrl(String url) {
+		UsageRecorder.recordCaller();
 		try {
-			getDriver().navigate().to(url);
+			getDriver().navigate().to(url.startsWith("/") ? ProjectProperties.BASE_URL + url : url);
+			DriverFactory.getContext().navigated();
 		} catch (Exception e) {
 			Assert.fail("It wasn't possible to go to the URL: " + url + "\n-----==========-----\nMessage: "
 					+ e.getMessage() + "\n-----==========-----");
@@ -44,9 +98,10 @@ public class Utils {
 	 * @param text    Text that you want to send.
 	 */
 	public void sendKeys(By locator, String text) {
+		UsageRecorder.recordCaller();
 		try {
-			getDriver().findElement(locator).clear();
-			getDriver().findElement(locator).sendKeys(text);
+			find(locator).clear();
+			find(locator).sendKeys(text);
 		} catch (Exception e) {
 			Assert.fail("It wasn't possible to send keys to element object: " + locator
 					+ "\n-----==========-----\nMessage: " + e.getMessage() + "\n-----==========-----");
@@ -63,6 +118,7 @@ public class Utils {
 	 * @param text    The text you want to send.
 	 */
 	public void sendKeysOnlyText(WebElement element, String text) {
+		UsageRecorder.recordCaller();
 		try {
 			boolean result = !Pattern.matches("^[a-zA-Z ]+$", element.getAttribute("value"));
 			if (result && element.isDisplayed() && element.isEnabled()) {
@@ -84,6 +140,7 @@ public class Utils {
 	 * @param text    The text you want to send.
 	 */
 	public void sendKeysInput(WebElement element, String text) {
+		UsageRecorder.recordCaller();
 		try {
 			if (element.getAttribute("value") == null || element.getAttribute("value") == "") {
 				this.highlight(element, true);
@@ -102,7 +159,8 @@ public class Utils {
 	 * @return The value from a field Locator.
 	 */
 	public String getFieldValue(By locator) {
-		return getDriver().findElement(locator).getAttribute("value");
+		UsageRecorder.recordCaller();
+		return find(locator).getAttribute("value");
 	}
 
 	/**
@@ -111,8 +169,9 @@ public class Utils {
 	 * @param locator Radio button locator.
 	 */
 	public void clickRadio(By locator) {
+		UsageRecorder.recordCaller();
 		try {
-			getDriver().findElement(locator).click();
+			find(locator).click();
 		} catch (Exception e) {
 			Assert.fail("It wasn't possible to click on the Radio button: " + locator
 					+ "\n-----==========-----\nMessage: " + e.getMessage() + "\n-----==========-----");
@@ -126,7 +185,8 @@ public class Utils {
 	 * @return True if it's marked, False if it's not.
 	 */
 	public boolean isRadioMarked(By locator) {
-		return getDriver().findElement(locator).isSelected();
+		UsageRecorder.recordCaller();
+		return find(locator).isSelected();
 	}
 
 	/**
@@ -135,8 +195,9 @@ public class Utils {
 	 * @param locator Check Box locator.
 	 */
 	public void clickCheckBox(By locator) {
+		UsageRecorder.recordCaller();
 		try {
-			getDriver().findElement(locator).click();
+			find(locator).click();
 		} catch (Exception e) {
 			Assert.fail("It wasn't possible to click on the CheckBox: " + locator + "\n-----==========-----\nMessage: "
 					+ e.getMessage() + "\n-----==========-----");
@@ -150,7 +211,8 @@ public class Utils {
 	 * @return True if it's marked, False if it's not.
 	 */
 	public boolean isCheckBoxMarked(By locator) {
-		return getDriver().findElement(locator).isSelected();
+		UsageRecorder.recordCaller();
+		return find(locator).isSelected();
 	}
 
 	/**
@@ -160,8 +222,9 @@ public class Utils {
 	 * @param text    The text contained into the Combo.
 	 */
 	public void selectCombo(By locator, String text) {
+		UsageRecorder.recordCaller();
 		try {
-			WebElement element = getDriver().findElement(locator);
+			WebElement element = find(locator);
 			Select combo = new Select(element);
 			combo.selectByVisibleText(text);
 		} catch (Exception e) {
@@ -177,8 +240,9 @@ public class Utils {
 	 * @param text    The text contained into the Combo.
 	 */
 	public void deselectCombo(By locator, String text) {
+		UsageRecorder.recordCaller();
 		try {
-			WebElement element = getDriver().findElement(locator);
+			WebElement element = find(locator);
 			Select combo = new Select(element);
 			combo.deselectByVisibleText(text);
 		} catch (Exception e) {
@@ -194,8 +258,9 @@ public class Utils {
 	 * @return The text contained into the Combo.
 	 */
 	public String getComboValue(By locator) {
+		UsageRecorder.recordCaller();
 		try {
-			WebElement element = getDriver().findElement(locator);
+			WebElement element = find(locator);
 			Select combo = new Select(element);
 			return combo.getFirstSelectedOption().getText();
 		} catch (Exception e) {
@@ -206,19 +271,23 @@ public class Utils {
 	}
 
 	/**
-	 * This method get all the values contained into a Combo.
+	 * This method get all the values contained into a Combo. The selected options
+	 * are read inside the browser with a single script, instead of one getText()
+	 * per option.
 	 * 
 	 * @param locator Combo locator.
 	 * @return A list with all values inside the Combo.
 	 */
+	@SuppressWarnings("unchecked")
 	public List<String> getComboValues(By locator) {
+		UsageRecorder.recordCaller();
 		try {
-			WebElement element = getDriver().findElement(locator);
-			Select combo = new Select(element);
-			List<WebElement> allSelectedOptions = combo.getAllSelectedOptions();
+			WebElement element = find(locator);
+			JavascriptExecutor executor = (JavascriptExecutor) getDriver();
+			List<Object> texts = (List<Object>) executor.executeScript(COMBO_SELECTED_TEXTS_SCRIPT, element);
 			List<String> values = new ArrayList<String>();
-			for (WebElement option : allSelectedOptions) {
-				values.add(option.getText());
+			for (Object text : texts) {
+				values.add(String.valueOf(text));
 			}
 			return values;
 		} catch (Exception e) {
@@ -228,6 +297,27 @@ public class Utils {
 		return null;
 	}
 
+	/**
+	 * This method obtains every option of a Combo with a single script. Each option
+	 * is returned as a map with the keys "index", "text", "value" and "selected".
+	 * 
+	 * @param locator Combo locator.
+	 * @return A list with one map per option, in the same order of the Combo.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Map<String, Object>> getComboOptions(By locator) {
+		UsageRecorder.recordCaller();
+		try {
+			WebElement element = find(locator);
+			JavascriptExecutor executor = (JavascriptExecutor) getDriver();
+			return (List<Map<String, Object>>) executor.executeScript(COMBO_OPTIONS_SCRIPT, element);
+		} catch (Exception e) {
+			Assert.fail("It wasn't possible to get the combo options: " + locator + "\n-----==========-----\nMessage: "
+					+ e.getMessage() + "\n-----==========-----");
+		}
+		return null;
+	}
+
 	/**
 	 * This methos obtains the number of the elements inside a Combo.
 	 * 
@@ -235,35 +325,32 @@ public class Utils {
 	 * @return The size (int) of the combo.
 	 */
 	public int getComboOptionsNumber(By locator) {
-		List<WebElement> options = null;
+		UsageRecorder.recordCaller();
 		try {
-			WebElement element = getDriver().findElement(locator);
-			Select combo = new Select(element);
-			options = combo.getOptions();
+			WebElement element = find(locator);
+			JavascriptExecutor executor = (JavascriptExecutor) getDriver();
+			return ((Number) executor.executeScript("return arguments[0].options.length;", element)).intValue();
 		} catch (Exception e) {
-			Assert.fail("It wasn't possible to click on the CheckBox: " + locator + "\n-----==========-----\nMessage: "
-					+ e.getMessage() + "\n-----==========-----");
+			Assert.fail("It wasn't possible to count the combo options: " + locator
+					+ "\n-----==========-----\nMessage: " + e.getMessage() + "\n-----==========-----");
 		}
-		return options.size();
+		return 0;
 	}
 
 	/**
 	 * This method verifies if  the Combo contains an option with a specific text.
+	 * The comparison runs inside the browser.
 	 * 
 	 * @param locator Combo locator.
 	 * @param text    Text that you want to check if is contained into the combo.
-	 * @return
+	 * @return True if an option has exactly the same text, False if it's not.
 	 */
 	public boolean verifyComboOption(By locator, String text) {
+		UsageRecorder.recordCaller();
 		try {
-			WebElement element = getDriver().findElement(locator);
-			Select combo = new Select(element);
-			List<WebElement> options = combo.getOptions();
-			for (WebElement option : options) {
-				if (option.getText().equals(text)) {
-					return true;
-				}
-			}
+			WebElement element = find(locator);
+			JavascriptExecutor executor = (JavascriptExecutor) getDriver();
+			return Boolean.TRUE.equals(executor.executeScript(COMBO_HAS_OPTION_SCRIPT, element, text));
 		} catch (Exception e) {
 			Assert.fail("It wasn't possible to verify the combo option: " + locator
 					+ "\n-----==========-----\nMessage: " + e.getMessage() + "\n-----==========-----");
@@ -277,8 +364,9 @@ public class Utils {
 	 * @param locator Button locator.
 	 */
 	public void clickButton(By locator) {
+		UsageRecorder.recordCaller();
 		try {
-			getDriver().findElement(locator).click();
+			find(locator).click();
 		} catch (Exception e) {
 			Assert.fail("It wasn't possible to click the button: " + locator + "\n-----==========-----\nMessage: "
 					+ e.getMessage() + "\n-----==========-----");
@@ -292,8 +380,9 @@ public class Utils {
 	 * @return Text contained into the element.
 	 */
 	public String getText(By locator) {
+		UsageRecorder.recordCaller();
 		try {
-			return getDriver().findElement(locator).getText();
+			return find(locator).getText();
 		} catch (Exception e) {
 			Assert.fail("It wasn't possible to get the text from: " + locator + "\n-----==========-----\nMessage: "
 					+ e.getMessage() + "\n-----==========-----");
@@ -307,6 +396,7 @@ public class Utils {
 	 * @return The text contained into the AlertBox.
 	 */
 	public String getTextFromAlert() {
+		UsageRecorder.recordCaller();
 		try {
 			Alert alert = getDriver().switchTo().alert();
 			return alert.getText();
@@ -324,6 +414,7 @@ public class Utils {
 	 * @return The text contained into the AlertBox.
 	 */
 	public String getTextFromAlertAndAccept() {
+		UsageRecorder.recordCaller();
 		try {
 			Alert alert = getDriver().switchTo().alert();
 			String value = alert.getText();
@@ -344,6 +435,7 @@ public class Utils {
 	 * @return The text contained into the AlertBox.
 	 */
 	public String getTextFromAlertAndDeny() {
+		UsageRecorder.recordCaller();
 		try {
 			Alert alert = getDriver().switchTo().alert();
 			String value = alert.getText();
@@ -363,6 +455,7 @@ public class Utils {
 	 * @param text Text that will be sent to the AlertBox.
 	 */
 	public void sendKeysOnAlert(String text) {
+		UsageRecorder.recordCaller();
 		try {
 			Alert alert = getDriver().switchTo().alert();
 			alert.sendKeys(text);
@@ -374,45 +467,83 @@ public class Utils {
 	}
 
 	/**
-	 * This method changes the driver focus to a Frame View.
+	 * This method changes the driver focus to a Frame View, inside the current
+	 * frame. After a getOutFrame(), the frame is entered again from the top of the
+	 * window if any command was sent inside it, since the page may have navigated.
 	 * 
 	 * @param frame_id Frame id.
 	 */
 	public void getIntoFrame(String frame_id) {
+		UsageRecorder.recordCaller();
+		BrowserContext context = DriverFactory.getContext();
 		try {
-			getDriver().switchTo().frame(frame_id);
+			context.enterFrame(frame_id);
+			getDriver();
 		} catch (Exception e) {
+			context.exitFrame();
 			Assert.fail("It wasn't possible to get into a the frame: " + frame_id + "\n-----==========-----\nMessage: "
 					+ e.getMessage() + "\n-----==========-----");
 		}
 	}
 
 	/**
-	 * This method changes driver focus to out of the Frame View.
+	 * This method changes driver focus to out of the Frame View. The switch is only
+	 * sent to the driver when the next command needs it.
 	 */
 	public void getOutFrame() {
-		try {
-			getDriver().switchTo().defaultContent();
-		} catch (Exception e) {
-			Assert.fail("It wasn't possible to out of the frame:" + "\n-----==========-----\nMessage: " + e.getMessage()
-					+ "\n-----==========-----");
-		}
+		UsageRecorder.recordCaller();
+		DriverFactory.getContext().exitFrames();
 	}
 
 	/**
-	 * This method change the driver focus to a specific window.
+	 * This method change the driver focus to a specific window. Nothing is sent to
+	 * the driver if it's already on that window.
 	 * 
 	 * @param window_id The if of the window.
 	 */
 	public void switchWindow(String window_id) {
+		UsageRecorder.recordCaller();
 		try {
-			getDriver().switchTo().window(window_id);
+			DriverFactory.getContext().switchWindow(window_id);
+			getDriver();
 		} catch (Exception e) {
 			Assert.fail("It wasn't possible to switch to window: " + window_id + "\n-----==========-----\nMessage: "
 					+ e.getMessage() + "\n-----==========-----");
 		}
 	}
 
+	/**
+	 * This method finds an element and keeps it in the cache of the current window
+	 * and frame. The next calls with the same locator, in the same window and
+	 * frame, don't send commands to the driver. The cache of a window is cleared
+	 * when it navigates; if the element is no longer attached to the page, call
+	 * {@link #evictCachedElement(By)} and find it again.
+	 * 
+	 * @param locator Element locator.
+	 * @return The cached element.
+	 */
+	public WebElement getCachedElement(By locator) {
+		UsageRecorder.recordCaller();
+		BrowserContext context = DriverFactory.getContext();
+		WebElement element = context.getCache().get(context.key(), locator);
+		if (element == null) {
+			element = find(locator);
+			context.getCache().put(context.key(), locator, element);
+		}
+		return element;
+	}
+
+	/**
+	 * This method removes an element from the cache of the current window and frame.
+	 * 
+	 * @param locator Element locator.
+	 */
+	public void evictCachedElement(By locator) {
+		UsageRecorder.recordCaller();
+		BrowserContext context = DriverFactory.getContext();
+		context.getCache().remove(context.key(), locator);
+	}
+
 	/**
 	 * This method execute a JavaScript command.
 	 * 
@@ -421,6 +552,7 @@ public class Utils {
 	 * @return
 	 */
 	public Object executeJS(String command, Object... args) {
+		UsageRecorder.recordCaller();
 		try {
 			JavascriptExecutor executor = (JavascriptExecutor) getDriver();
 			return executor.executeScript(command, args);
@@ -437,12 +569,12 @@ public class Utils {
 	 * @param locator Element locator.
 	 */
 	public void scrollToElement(By locator) {
+		UsageRecorder.recordCaller();
 		try {
-			WebElement element = getDriver().findElement(locator);
+			WebElement element = find(locator);
 
 			if (element != null) {
-				JavascriptExecutor executor = (JavascriptExecutor) getDriver();
-				executor.executeScript("arguments[0].scrollIntoView(true)", element);
+				ScriptLibrary.call("scroll", element);
 			}
 		} catch (Exception e) {
 			Assert.fail("It wasn't possible to scroll to the element: " + locator + "\n-----==========-----\nMessage: "
@@ -457,10 +589,10 @@ public class Utils {
 	 * @param element WebElement.
 	 */
 	public void scrollToElement(WebElement element) {
+		UsageRecorder.recordCaller();
 		try {
 			if (element != null) {
-				JavascriptExecutor executor = (JavascriptExecutor) getDriver();
-				executor.executeScript("arguments[0].scrollIntoView(true)", element);
+				ScriptLibrary.call("scroll", element);
 			}
 		} catch (Exception e) {
 			Assert.fail("It wasn't possible to scroll to the element locator element: "
@@ -469,19 +601,17 @@ public class Utils {
 	}
 
 	/**
-	 * This method highlights an element.
+	 * This method scrolls to an element and highlights it.
 	 * 
 	 * @param locator Element locator.
 	 * @param arg     (boolean) If True highlight with green color, if False
 	 *                highlight with red color.
 	 */
 	public void highlight(By locator, boolean arg) {
+		UsageRecorder.recordCaller();
 		try {
-			WebElement element = getDriver().findElement(locator);
-			String color = arg ? "outline: 4px solid #00FF00;" : "outline: 4px solid #ff0000;";
-			this.scrollToElement(locator);
-			JavascriptExecutor executor = (JavascriptExecutor) getDriver();
-			executor.executeScript("arguments[0].setAttribute('style, arguments[1]');", element, color);
+			WebElement element = find(locator);
+			ScriptLibrary.call("highlight", element, arg);
 		} catch (Exception e) {
 			Assert.fail("It wasn't possible to highlight the element: " + locator + "\n-----==========-----\nMessage: "
 					+ e.getMessage() + "\n-----==========-----");
@@ -496,11 +626,9 @@ public class Utils {
 	 *                highlight with red color.
 	 */
 	public void highlight(WebElement element, boolean arg) {
+		UsageRecorder.recordCaller();
 		try {
-			String color = arg ? "outline: 4px solid #00FF00;" : "outline: 4px solid #ff0000;";
-			this.scrollToElement(element);
-			JavascriptExecutor executor = (JavascriptExecutor) getDriver();
-			executor.executeScript("arguments[0].setAttribute('style', arguments[1]);", element, color);
+			ScriptLibrary.call("highlight", element, arg);
 		} catch (Exception e) {
 			Assert.fail("It wasn't possible to highlight the element locator element: "
 					+ "\n-----==========-----\nMessage: " + e.getMessage() + "\n-----==========-----");
@@ -513,10 +641,10 @@ public class Utils {
 	 * @param locator Element locator.
 	 */
 	public void focusJS(By locator) {
+		UsageRecorder.recordCaller();
 		try {
-			WebElement element = getDriver().findElement(locator);
-			JavascriptExecutor executor = (JavascriptExecutor) getDriver();
-			executor.executeScript("arguments[0].focus();", element);
+			WebElement element = find(locator);
+			ScriptLibrary.call("focus", element);
 		} catch (Exception e) {
 			Assert.fail("It wasn't possible to focus on the element: " + locator + "\n-----==========-----\nMessage: "
 					+ e.getMessage() + "\n-----==========-----");
@@ -524,17 +652,17 @@ public class Utils {
 	}
 
 	/**
-	 * This method execute a click using javaScript command.
+	 * This method highlights an element and clicks on it using the injected script
+	 * library.
 	 * 
 	 * @param locator Element locator.
 	 */
 	public void clickJS(By locator) {
+		UsageRecorder.recordCaller();
 		try {
 			waitElementIsVisible(locator, 10);
-			WebElement element = getDriver().findElement(locator);
-			this.highlight(element, true);
-			JavascriptExecutor executor = (JavascriptExecutor) getDriver();
-			executor.executeScript("arguments[0].click();", element);
+			WebElement element = find(locator);
+			ScriptLibrary.call("click", element);
 		} catch (Exception e) {
 			Assert.fail("It wasn't possible to click using JavaScript on the element: " + locator
 					+ "\n-----==========-----\nMessage: " + e.getMessage() + "\n-----==========-----");
@@ -547,12 +675,11 @@ public class Utils {
 	 * @param locator Element locator.
 	 */
 	public void doubleClickJS(By locator) {
+		UsageRecorder.recordCaller();
 		try {
 			waitElementIsVisible(locator, 10);
-			WebElement element = getDriver().findElement(locator);
-			this.highlight(element, true);
-			JavascriptExecutor executor = (JavascriptExecutor) getDriver();
-			executor.executeScript("arguments[0].doubleclick();", element);
+			WebElement element = find(locator);
+			ScriptLibrary.call("doubleClick", element);
 		} catch (Exception e) {
 			Assert.fail("It wasn't possible to double click using JavaScript on the element: " + locator
 					+ "\n-----==========-----\nMessage: " + e.getMessage() + "\n-----==========-----");
@@ -560,21 +687,19 @@ public class Utils {
 	}
 
 	/**
-	 * This method executes a click on a list.
+	 * This method executes a click on a list. The first element whose text
+	 * contains the given text is matched and clicked inside the browser, so the
+	 * size of the list does not change the number of driver commands.
 	 * 
 	 * @param locator Element locator.
 	 * @param text    Text contained into the element on the list.
 	 */
 	public void clickOnListJS(By locator, String text) {
+		UsageRecorder.recordCaller();
 		try {
-			List<WebElement> elements = getDriver().findElements(locator);
-			for (WebElement webElement : elements) {
-				if (webElement.getText().contains(text)) {
-					JavascriptExecutor executor = (JavascriptExecutor) getDriver();
-					executor.executeScript("arguments[0].click();", webElement);
-					break;
-				}
-			}
+			List<WebElement> elements = findAll(locator);
+			JavascriptExecutor executor = (JavascriptExecutor) getDriver();
+			executor.executeScript(CLICK_ON_LIST_SCRIPT, elements, text);
 		} catch (Exception e) {
 			Assert.fail("It wasn't possible to click on the list of elements using JavaScript " + locator
 					+ "\n-----==========-----\nMessage: " + e.getMessage() + "\n-----==========-----");
@@ -582,18 +707,18 @@ public class Utils {
 	}
 
 	/**
-	 * Send keys (text) to a specific element using JavaScript command.
+	 * Send keys (text) to a specific element using the injected script library.
+	 * The text is sent as an argument, it is never part of the script source.
 	 * 
 	 * @param locator Element locator.
 	 * @param text    The text that will be sent.
 	 */
 	public void sendKeysJS(By locator, String text) {
+		UsageRecorder.recordCaller();
 		try {
 			waitElementIsVisible(locator, 10);
-			WebElement element = getDriver().findElement(locator);
-			this.highlight(element, true);
-			JavascriptExecutor executor = (JavascriptExecutor) getDriver();
-			executor.executeScript("arguments[0].value = '" + text + "';", element);
+			WebElement element = find(locator);
+			ScriptLibrary.call("setValue", element, text);
 		} catch (Exception e) {
 			Assert.fail("It wasn't possible to send keys on the element using JavaScript " + locator
 					+ "\n-----==========-----\nMessage: " + e.getMessage() + "\n-----==========-----");
@@ -607,7 +732,8 @@ public class Utils {
 	 * @return The value of an element.
 	 */
 	public String getElementValue(By locator) {
-		return getDriver().findElement(locator).getAttribute("value");
+		UsageRecorder.recordCaller();
+		return find(locator).getAttribute("value");
 	}
 
 	/**
@@ -619,19 +745,8 @@ public class Utils {
 	 * @throws InterruptedException
 	 */
 	public boolean waitElementIsVisible(By locator, int timeout) throws InterruptedException {
-		int count = 0;
-		do {
-			try {
-				WebElement element = getDriver().findElement(locator);
-				if (element.isDisplayed()) {
-					return true;
-				}
-			} catch (Exception e) {
-			}
-			Thread.sleep(250);
-			count++;
-		} while (count < timeout * 4);
-		return false;
+		UsageRecorder.recordCaller();
+		return waitFor(locator, timeout, element -> element.isDisplayed());
 	}
 
 	/**
@@ -643,19 +758,8 @@ public class Utils {
 	 * @throws InterruptedException
 	 */
 	public boolean waitElementIsNotVisible(By locator, int timeout) throws InterruptedException {
-		int count = 0;
-		do {
-			try {
-				WebElement element = getDriver().findElement(locator);
-				if (!element.isDisplayed()) {
-					return true;
-				}
-			} catch (Exception e) {
-			}
-			Thread.sleep(250);
-			count++;
-		} while (count < timeout * 4);
-		return false;
+		UsageRecorder.recordCaller();
+		return waitFor(locator, timeout, element -> !element.isDisplayed());
 	}
 
 	/**
@@ -665,8 +769,15 @@ public class Utils {
 	 * @param timeout Time (long). Recommended: 30.
 	 */
 	public void waitWebDriverElementExists(By locator, long timeout) {
-		WebDriverWait driverWait = new WebDriverWait(getDriver(), timeout);
-		driverWait.until(ExpectedConditions.presenceOfElementLocated(locator));
+		UsageRecorder.recordCaller();
+		long start = System.nanoTime();
+		try {
+			// Same as ExpectedConditions.presenceOfElementLocated, through find() so the
+			// profiler sees each poll.
+			ScenarioBudget.webDriverWait(getDriver(), timeout).until(driver -> find(locator));
+		} finally {
+			ScenarioBudget.waited(start);
+		}
 	}
 
 	/**
@@ -677,8 +788,17 @@ public class Utils {
 	 * @param timeout Time (long). Recommended: 30.
 	 */
 	public void waitWebDriverElementListPresent(By locator, long timeout) {
-		WebDriverWait driverWait = new WebDriverWait(getDriver(), timeout);
-		driverWait.until(ExpectedConditions.presenceOfAllElementsLocatedBy(locator));
+		UsageRecorder.recordCaller();
+		long start = System.nanoTime();
+		try {
+			// Same as ExpectedConditions.presenceOfAllElementsLocatedBy, through findAll().
+			ScenarioBudget.webDriverWait(getDriver(), timeout).until(driver -> {
+				List<WebElement> elements = findAll(locator);
+				return elements.isEmpty() ? null : elements;
+			});
+		} finally {
+			ScenarioBudget.waited(start);
+		}
 	}
 
 	/**
@@ -690,19 +810,8 @@ public class Utils {
 	 * @throws InterruptedException
 	 */
 	public boolean waitElementIsEnable(By locator, long timeout) throws InterruptedException {
-		int count = 0;
-		do {
-			try {
-				WebElement element = getDriver().findElement(locator);
-				if (element.isDisplayed() && element.isEnabled()) {
-					return true;
-				}
-			} catch (Exception e) {
-			}
-			Thread.sleep(250);
-			count++;
-		} while (count < timeout * 4);
-		return false;
+		UsageRecorder.recordCaller();
+		return waitFor(locator, timeout, element -> element.isDisplayed() && element.isEnabled());
 	}
 
 	/**
@@ -713,8 +822,9 @@ public class Utils {
 	 * @return True if the element contains the text, False if it's not.
 	 */
 	public boolean elementContainsText(By locator, String text) {
+		UsageRecorder.recordCaller();
 		try {
-			WebElement element = getDriver().findElement(locator);
+			WebElement element = find(locator);
 			this.highlight(element, true);
 			return element.getText().contains(text);
 		} catch (Exception e) {
@@ -732,8 +842,9 @@ public class Utils {
 	 * @return True if the text it's contained, False if it's not.
 	 */
 	public boolean attributeContaisText(By locator, String att, String text) {
+		UsageRecorder.recordCaller();
 		try {
-			WebElement element = getDriver().findElement(locator);
+			WebElement element = find(locator);
 			this.highlight(element, true);
 			return element.getAttribute(att).contains(text);
 		} catch (Exception e) {
@@ -749,9 +860,10 @@ public class Utils {
 	 * @return The attribute value.
 	 */
 	public String getAttribute(By locator, String att) {
+		UsageRecorder.recordCaller();
 
 		try {
-			WebElement element = getDriver().findElement(locator);
+			WebElement element = find(locator);
 			this.highlight(element, true);
 			return element.getAttribute(att);
 		} catch (Exception e) {
@@ -766,8 +878,9 @@ public class Utils {
 	 * @return True if the element is enabled, False if it's not.
 	 */
 	public boolean isEnabled(By locator) {
+		UsageRecorder.recordCaller();
 		try {
-			WebElement element = getDriver().findElement(locator);
+			WebElement element = find(locator);
 			this.highlight(element, true);
 			return element.isEnabled();
 		} catch (Exception e) {
@@ -782,8 +895,9 @@ public class Utils {
 	 * @return True if the element isn't enabled, False if it's.
 	 */
 	public boolean isDisabled(By locator) {
+		UsageRecorder.recordCaller();
 		try {
-			WebElement element = getDriver().findElement(locator);
+			WebElement element = find(locator);
 			this.highlight(element, true);
 			return !element.isEnabled();
 		} catch (Exception e) {
@@ -798,8 +912,9 @@ public class Utils {
 	 * @return True if the element is being displayed, False if it's not.
 	 */
 	public boolean isDisplayed(By locator) {
+		UsageRecorder.recordCaller();
 		try {
-			WebElement element = getDriver().findElement(locator);
+			WebElement element = find(locator);
 			this.highlight(element, true);
 			return element.isDisplayed();
 		} catch (Exception e) {
@@ -814,8 +929,9 @@ public class Utils {
 	 * @return True if the element is not being displayed, false if it is.
 	 */
 	public boolean isNotDisplayed(By locator) {
+		UsageRecorder.recordCaller();
 		try {
-			WebElement element = getDriver().findElement(locator);
+			WebElement element = find(locator);
 			this.highlight(element, true);
 			return !element.isDisplayed();
 		} catch (Exception e) {
@@ -823,12 +939,38 @@ public class Utils {
 		}
 	}
 
+	/**
+	 * This method captures the whole page into a local snapshot. Use it when a
+	 * step verifies many things on the same page: the queries on the snapshot
+	 * don't send commands to the driver. See {@link DomSnapshot} for the staleness
+	 * rules.
+	 * 
+	 * @return A snapshot of the current page.
+	 */
+	public DomSnapshot snapshot() {
+		UsageRecorder.recordCaller();
+		return DomSnapshot.capture();
+	}
+
+	/**
+	 * This method captures an element and its descendants into a local snapshot.
+	 * 
+	 * @param locator Locator of the root element of the snapshot.
+	 * @return A snapshot of the element.
+	 */
+	public DomSnapshot snapshot(By locator) {
+		UsageRecorder.recordCaller();
+		return DomSnapshot.capture(locator);
+	}
+
 	/**
 	 * This method executes a refresh on the actual page.
 	 */
 	public void refreshPage() {
+		UsageRecorder.recordCaller();
 		try {
 			getDriver().navigate().refresh();
+			DriverFactory.getContext().navigated();
 		} catch (Exception e) {
 		}
 	}
@@ -840,9 +982,10 @@ public class Utils {
 	 * @param index   Index of the element from the drop down list.
 	 */
 	public void setSelect(By locator, int index) {
+		UsageRecorder.recordCaller();
 		try {
-			WebElement element = getDriver().findElement(locator);
-			Select selectElement = new Select(getDriver().findElement(locator));
+			WebElement element = find(locator);
+			Select selectElement = new Select(find(locator));
 			if (element.isDisplayed() && element.isEnabled()) {
 				this.highlight(element, true);
 				selectElement.selectByIndex(index);
@@ -860,9 +1003,10 @@ public class Utils {
 	 * @param text    Text of the element from the drop down list.
 	 */
 	public void setSelect(By locator, String text) {
+		UsageRecorder.recordCaller();
 		try {
-			WebElement element = getDriver().findElement(locator);
-			Select selectElement = new Select(getDriver().findElement(locator));
+			WebElement element = find(locator);
+			Select selectElement = new Select(find(locator));
 			if (element.isDisplayed() && element.isEnabled()) {
 				this.highlight(element, true);
 				selectElement.selectByValue(text);
@@ -873,4 +1017,55 @@ public class Utils {
 		}
 	}
 
+	/**
+	 * Polls an element every 250 ms until it meets a condition. The timeout is
+	 * cut to the budget left to the scenario (see {@link ScenarioBudget}).
+	 *
+	 * @return True if the element met the condition in time.
+	 */
+	private boolean waitFor(By locator, long timeout, Predicate<WebElement> condition) throws InterruptedException {
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(ScenarioBudget.clamp(TimeUnit.SECONDS.toMillis(timeout)));
+		try {
+			do {
+				try {
+					if (condition.test(find(locator))) {
+						return true;
+					}
+				} catch (Exception e) {
+				}
+				Thread.sleep(Math.max(0, Math.min(250, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()))));
+			} while (System.nanoTime() < deadline);
+			return false;
+		} finally {
+			ScenarioBudget.waited(start);
+		}
+	}
+
+	/**
+	 * Finds the first element of a locator. Every lookup of this class (and of
+	 * {@link DomSnapshot}) goes through here, so the {@link LocatorProfiler} can
+	 * measure it.
+	 */
+	WebElement find(By locator) {
+		if (!LocatorProfiler.isEnabled()) {
+			return getDriver().findElement(locator);
+		}
+		List<WebElement> elements = findAll(locator);
+		if (elements.isEmpty()) {
+			throw new NoSuchElementException("Cannot locate an element using " + locator);
+		}
+		return elements.get(0);
+	}
+
+	private List<WebElement> findAll(By locator) {
+		WebDriver driver = getDriver();
+		if (!LocatorProfiler.isEnabled()) {
+			return driver.findElements(locator);
+		}
+		long start = System.nanoTime();
+		List<WebElement> elements = driver.findElements(locator);
+		LocatorProfiler.record(locator, System.nanoTime() - start, elements.size());
+		return elements;
+	}
 }
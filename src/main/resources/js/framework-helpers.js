@@ -0,0 +1,92 @@
+/*
+ * Helper library injected once per document by util.ScriptLibrary.
+ * Each function receives the arguments sent by the Java side, so no user data
+ * is ever concatenated into script source.
+ */
+window.__fw = window.__fw || (function () {
+	var GREEN = 'outline: 4px solid #00FF00;';
+	var RED = 'outline: 4px solid #ff0000;';
+
+	var snapshots = {};
+	var nextSnapshot = 1;
+
+	function isVisible(element) {
+		return !!(element.offsetWidth || element.offsetHeight || element.getClientRects().length);
+	}
+
+	function annotate(original, copy) {
+		copy.setAttribute('data-fw-visible', isVisible(original) ? 'true' : 'false');
+		if ('value' in original && typeof original.value === 'string') {
+			copy.setAttribute('value', original.value);
+		}
+		if ('checked' in original) {
+			if (original.checked) {
+				copy.setAttribute('checked', 'checked');
+			} else {
+				copy.removeAttribute('checked');
+			}
+		}
+		if ('selected' in original) {
+			if (original.selected) {
+				copy.setAttribute('selected', 'selected');
+			} else {
+				copy.removeAttribute('selected');
+			}
+		}
+		for (var i = 0; i < original.children.length; i++) {
+			annotate(original.children[i], copy.children[i]);
+		}
+	}
+
+	function highlight(element, success) {
+		element.scrollIntoView(true);
+		element.setAttribute('style', success ? GREEN : RED);
+	}
+
+	return {
+		scroll: function (element) {
+			element.scrollIntoView(true);
+		},
+		highlight: highlight,
+		focus: function (element) {
+			element.focus();
+		},
+		click: function (element) {
+			highlight(element, true);
+			element.click();
+		},
+		doubleClick: function (element) {
+			highlight(element, true);
+			element.dispatchEvent(new MouseEvent('dblclick', {bubbles: true, cancelable: true, view: window}));
+		},
+		setValue: function (element, text) {
+			highlight(element, true);
+			element.value = text;
+		},
+		snapshot: function (root) {
+			root = root || document.documentElement;
+			var copy = root.cloneNode(true);
+			annotate(root, copy);
+			var id = nextSnapshot++;
+			var entry = {changed: false};
+			entry.observer = new MutationObserver(function () {
+				entry.changed = true;
+				entry.observer.disconnect();
+			});
+			entry.observer.observe(root, {attributes: true, childList: true, characterData: true, subtree: true});
+			snapshots[id] = entry;
+			return {id: id, url: location.href, xml: new XMLSerializer().serializeToString(copy)};
+		},
+		snapshotChanged: function (id) {
+			var entry = snapshots[id];
+			return !entry || entry.changed;
+		},
+		releaseSnapshot: function (id) {
+			var entry = snapshots[id];
+			if (entry) {
+				entry.observer.disconnect();
+				delete snapshots[id];
+			}
+		}
+	};
+})();